@@ -2,13 +2,27 @@ import java.awt.BorderLayout;
 import java.awt.Dimension;
 import java.awt.FlowLayout;
 import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
 import java.nio.file.*;
 import java.text.NumberFormat;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
 import javax.swing.table.DefaultTableModel;
 
 /**
@@ -18,6 +32,12 @@ import javax.swing.table.DefaultTableModel;
 public class FarmStoreManager extends JFrame {
 
     public static void main(String[] args) {
+        if (args.length>0 && args[0].equals("--simulate")){ LoadSim.main(Arrays.copyOfRange(args,1,args.length)); return; }
+        if (args.length>0 && args[0].equals("--sync")){ StoreSync.main(Arrays.copyOfRange(args,1,args.length)); return; }
+        if (args.length>1 && args[0].equals("--sync-report")){ StoreSync.report(Path.of(args[1])); return; }
+        if (args.length>0 && args[0].equals("--heap-report")){ HeapReport.main(Arrays.copyOfRange(args,1,args.length)); return; }
+        if (args.length>0 && args[0].equals("--api")){ CheckoutApi.main(Arrays.copyOfRange(args,1,args.length)); return; }
+        if (args.length>0 && args[0].equals("--api-load")){ ApiLoad.main(Arrays.copyOfRange(args,1,args.length)); return; }
         SwingUtilities.invokeLater(() -> {
             FarmStoreManager app = new FarmStoreManager();
             app.setVisible(true);
@@ -34,13 +54,23 @@ public class FarmStoreManager extends JFrame {
         // Ensure data dir and headers + seed rows exist
         CsvFiles.ensureAllWithSeed();
         LifetimeTransactionRepo.loadIntoLists();
+        try { ChangeLog.attach(); }
+        catch (IOException e){
+            JOptionPane.showMessageDialog(null, "Cannot open the change log, so changes would not reach head office:\n"+e.getMessage()
+                    +"\nRepair or move "+CsvFiles.p(ChangeLog.FILE)+" and start again.");
+            System.exit(1);
+        }
 
         List<InventoryItem> all = InventoryRepo.all();
+        List<InventoryItem> counted = new ArrayList<>();
         for (InventoryItem it : InventoryRepo.all()){
             int qty = i(JOptionPane.showInputDialog(null,"Today's Stock of " + it.name, Integer.toString(it.qtyOnHand)));
-            for (InventoryItem x : all) if (x.id.equals(it.id)){ x.qtyOnHand=qty;}
+            for (InventoryItem x : all) if (x.id.equals(it.id) && x.qtyOnHand!=qty){ x.qtyOnHand=qty; counted.add(x);}
         }            
         InventoryRepo.saveAll(all);
+        for (InventoryItem x : counted) InventoryRepo.changes.publish(ChangeKind.UPDATE, x.id, x);
+
+        StockVelocity.tracker();
 
         JTabbedPane tabs = new JTabbedPane();
         tabs.addTab("Store", new StorePanel());
@@ -48,6 +78,13 @@ public class FarmStoreManager extends JFrame {
         tabs.addTab("Animals", new AnimalsPanel());
         tabs.addTab("Reports", new ReportsPanel());
         add(tabs, BorderLayout.CENTER);
+
+        // optional register API in the same process: -Dfarmstore.apiPort=8080
+        String apiPort = System.getProperty("farmstore.apiPort");
+        if (apiPort!=null){
+            try { CheckoutApi.start(i(apiPort)); }
+            catch (IOException e){ JOptionPane.showMessageDialog(null, "Register API not started: "+e.getMessage()); }
+        }
     }
 
     // ===================== Data & Utils =====================
@@ -62,14 +99,44 @@ public class FarmStoreManager extends JFrame {
     private static ArrayList<String> lifetimeItems = new ArrayList<>();
     private static ArrayList<String> lifetimePrices = new ArrayList<>();
     
-    static final String DATA_DIR = "data";  // one folder, auto-created
+    static String DATA_DIR = System.getProperty("farmstore.dataDir", "data");  // one folder, auto-created
     static final double TAX_RATE = 0.07;
+    // one writer at a time across the GUI, the HTTP API and the simulator; CSV writes are
+    // atomic file swaps, so readers never need it. A ReentrantLock rather than a monitor: it
+    // is held across file I/O, and API requests waiting on it must not pin virtual-thread carriers
+    static final java.util.concurrent.locks.ReentrantLock DB_LOCK = new java.util.concurrent.locks.ReentrantLock();
+
+    // takes DB_LOCK for a read-modify-write, first finishing a checkout whose file swap failed
+    // after its receipt was written (StoreOps.finishPending); until that succeeds every writer
+    // is refused, so none can build on a file the pending swap would later replace
+    static void lockDb(){
+        DB_LOCK.lock();
+        try { StoreOps.finishPending(); }
+        catch (RuntimeException e){ DB_LOCK.unlock(); throw e; }
+    }
     static final NumberFormat CURRENCY = NumberFormat.getCurrencyInstance();
 
     static String money(double d) { return CURRENCY.format(d); }
     static String id(String prefix) { return prefix + "-" + UUID.randomUUID().toString().substring(0,8); }
 
-    DateTimeFormatter format = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'H:mm:ss");
+    // String dictionary for low-cardinality model fields (category, species, breed, sex,
+    // supplier, line type/description, appointment status). Loaders route parsed values
+    // through here so every repeated value shares one String instance across the history.
+    static class Dict {
+        static boolean enabled = true;
+        private static final java.util.concurrent.ConcurrentHashMap<String,String> pool = new java.util.concurrent.ConcurrentHashMap<>();
+        static {
+            for (String s : new String[]{"ITEM","ANIMAL","SERVICE","BOOKED","DONE","M","F",""}) pool.put(s, s);
+        }
+        static String of(String s){
+            if (s==null || !enabled) return s;
+            String hit = pool.putIfAbsent(s, s);
+            return hit==null? s : hit;
+        }
+        static int size(){ return pool.size(); }
+    }
+
+    static final DateTimeFormatter format = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'H:mm:ss");
     
     static class CsvFiles {
         static Path p(String name){ return Path.of(DATA_DIR, name); }
@@ -116,6 +183,7 @@ public class FarmStoreManager extends JFrame {
             ensureHeaderOnly(p("appointments.csv"), "id,customerId,animalId,serviceId,start,end,status,paidAmount");
             ensureHeaderOnly(p("sales.csv"), "id,dateTime,customerId,subTotal,tax,total,paidCash,paidCard,linesJson");
             ensureHeaderOnly(p("lifetime_transactions.csv"), "date,receiptId,items,price");
+            StoreOps.recover();
         }
 
         static void ensureWithSeed(Path path, String header, List<String[]> seedRows) {
@@ -158,11 +226,40 @@ public class FarmStoreManager extends JFrame {
             return rows;
         }
 
+        // writes a sibling temp file and swaps it in, so concurrent readers see old or new, never half;
+        // throws UncheckedIOException when the file could not be replaced (the old one is intact)
         static void write(Path path, String header, List<String[]> rows) {
-            try (PrintWriter pw = new PrintWriter(Files.newBufferedWriter(path))) {
+            try { swap(stage(path, header, rows), path); }
+            catch (IOException e) { throw new UncheckedIOException(e); }
+        }
+
+        // full contents written next to path; nothing visible until swap()
+        static Path stage(Path path, String header, List<String[]> rows) throws IOException {
+            return stage(path, ".tmp", header, rows);
+        }
+        static Path stage(Path path, String suffix, String header, List<String[]> rows) throws IOException {
+            Path tmp = path.resolveSibling(path.getFileName()+suffix);
+            try (PrintWriter pw = new PrintWriter(Files.newBufferedWriter(tmp))) {
                 pw.println(header);
                 for (String[] r : rows) pw.println(String.join(",", safe(r)));
-            } catch (IOException e) { e.printStackTrace(); }
+                if (pw.checkError()) throw new IOException("write failed: "+tmp);
+            }
+            return tmp;
+        }
+
+        static void swap(Path tmp, Path path) throws IOException {
+            try { Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE); }
+            catch (AtomicMoveNotSupportedException e) { Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING); }
+        }
+
+        // one row onto the end of an existing file, no re-read
+        static void append(Path path, String header, String[] row) throws IOException {
+            boolean fresh = !Files.exists(path) || Files.size(path)==0;
+            try (PrintWriter pw = new PrintWriter(Files.newBufferedWriter(path, StandardOpenOption.CREATE, StandardOpenOption.APPEND))) {
+                if (fresh) pw.println(header);
+                pw.println(String.join(",", safe(row)));
+                if (pw.checkError()) throw new IOException("append failed: "+path);
+            }
         }
 
         // CSV helpers: simple split that supports quoted fields (basic)
@@ -246,6 +343,69 @@ public class FarmStoreManager extends JFrame {
             s.itemType="ANIMAL"; s.refId=a.id; s.description=a.species+" ("+a.breed+")"; s.qty=1; s.unitPrice=a.price; s.taxable=false; s.lineTotal=a.price;
             return s;
         }
+        static SaleLine service(Service svc, double price){
+            SaleLine s = new SaleLine();
+            s.itemType="SERVICE"; s.refId=svc.id; s.description=svc.name+" Service"; s.qty=1; s.unitPrice=price; s.taxable=false; s.lineTotal=price;
+            return s;
+        }
+    }
+
+    // A customer's basket: items, animals and appointment services rung up together,
+    // then committed as one Sale by StoreOps.checkout.
+    static class Cart {
+        final Sale sale = new Sale();
+        final Map<String,Double> appointments = new LinkedHashMap<>(); // appointment id -> amount paid
+
+        Cart customer(String customerId){ sale.customerId = n(customerId); return this; }
+
+        // repeated SKUs fold into one line
+        Cart addItem(InventoryItem it, int qty){
+            for (SaleLine l : sale.lines) if (l.itemType.equals("ITEM") && l.refId.equals(it.id)){
+                l.qty += qty; l.lineTotal = l.qty*l.unitPrice; return priced();
+            }
+            sale.lines.add(SaleLine.item(it, qty));
+            return priced();
+        }
+        Cart addAnimal(Animal a){
+            for (SaleLine l : sale.lines) if (l.itemType.equals("ANIMAL") && l.refId.equals(a.id)) return this;
+            sale.lines.add(SaleLine.animal(a));
+            return priced();
+        }
+        Cart addAppointment(Appointment ap, Service svc, double price){
+            if (appointments.containsKey(ap.id)) return this;
+            appointments.put(ap.id, price);
+            sale.lines.add(SaleLine.service(svc, price));
+            return priced();
+        }
+
+        int qtyOf(String itemId){
+            for (SaleLine l : sale.lines) if (l.itemType.equals("ITEM") && l.refId.equals(itemId)) return l.qty;
+            return 0;
+        }
+        boolean isEmpty(){ return sale.lines.isEmpty(); }
+        double total(){ return sale.total; }
+
+        private Cart priced(){ computeTotals(sale); return this; }
+    }
+
+    // ===================== Change Events =====================
+    // Repositories publish one event per changed row so views can patch themselves
+    // instead of re-reading the whole CSV after every action.
+
+    enum ChangeKind { INSERT, UPDATE, DELETE }
+
+    static class Change<T> {
+        final ChangeKind kind; final String id; final T row; // row is null for DELETE
+        Change(ChangeKind kind, String id, T row){ this.kind=kind; this.id=id; this.row=row; }
+    }
+
+    static class ChangeFeed<T> {
+        private final List<Consumer<Change<T>>> listeners = new CopyOnWriteArrayList<>();
+        void subscribe(Consumer<Change<T>> l){ listeners.add(l); }
+        void publish(ChangeKind kind, String id, T row){
+            Change<T> c = new Change<>(kind, id, row);
+            for (Consumer<Change<T>> l : listeners) l.accept(c);
+        }
     }
 
     // ===================== Storage (CSV-backed) =====================
@@ -255,20 +415,53 @@ public class FarmStoreManager extends JFrame {
             List<InventoryItem> list = new ArrayList<>();
             for (String[] r : CsvFiles.read(CsvFiles.p("inventory.csv"))) {
                 if (r.length<7) continue;
-                list.add(new InventoryItem(r[0], r[1], r[2], r[3], d(r[4]), i(r[5]), b(r[6])));
+                list.add(parse(r));
             }
             return list;
         }
         static void saveAll(List<InventoryItem> items){
             List<String[]> rows = new ArrayList<>();
-            for (InventoryItem it : items){
-                rows.add(new String[]{it.id,it.sku,it.name,it.category, Double.toString(it.unitPrice), Integer.toString(it.qtyOnHand), Boolean.toString(it.taxable)});
-            }
-            CsvFiles.write(CsvFiles.p("inventory.csv"), "id,sku,name,category,unitPrice,qtyOnHand,taxable", rows);
+            for (InventoryItem it : items) rows.add(row(it));
+            CsvFiles.write(CsvFiles.p("inventory.csv"), HEADER, rows);
+        }
+        static final String HEADER = "id,sku,name,category,unitPrice,qtyOnHand,taxable";
+        static InventoryItem parse(String[] r){ return new InventoryItem(r[0], r[1], r[2], Dict.of(r[3]), d(r[4]), i(r[5]), b(r[6])); }
+        static String[] row(InventoryItem it){
+            return new String[]{it.id,it.sku,it.name,it.category, Double.toString(it.unitPrice), Integer.toString(it.qtyOnHand), Boolean.toString(it.taxable)};
         }
         static Optional<InventoryItem> bySku(String sku){
             return all().stream().filter(i->i.sku.equalsIgnoreCase(sku)).findFirst();
         }
+
+        static final ChangeFeed<InventoryItem> changes = new ChangeFeed<>();
+
+        static void insert(InventoryItem it){
+            lockDb();
+            try {
+                List<InventoryItem> all = all(); all.add(it); saveAll(all);
+                changes.publish(ChangeKind.INSERT, it.id, it);
+            } finally { DB_LOCK.unlock(); }
+        }
+        static InventoryItem update(String id, Consumer<InventoryItem> edit){
+            lockDb();
+            try {
+                List<InventoryItem> all = all(); InventoryItem hit = null;
+                for (InventoryItem x : all) if (x.id.equals(id)){ edit.accept(x); hit = x; }
+                if (hit==null) return null;
+                saveAll(all);
+                changes.publish(ChangeKind.UPDATE, id, hit);
+                return hit;
+            } finally { DB_LOCK.unlock(); }
+        }
+        static void delete(String id){
+            lockDb();
+            try {
+                List<InventoryItem> all = all();
+                if (!all.removeIf(x -> x.id.equals(id))) return;
+                saveAll(all);
+                changes.publish(ChangeKind.DELETE, id, null);
+            } finally { DB_LOCK.unlock(); }
+        }
     }
 
     static class AnimalRepo {
@@ -276,16 +469,139 @@ public class FarmStoreManager extends JFrame {
             List<Animal> list = new ArrayList<>();
             for (String[] r: CsvFiles.read(CsvFiles.p("animals.csv"))){
                 if (r.length<11) continue;
-                list.add(new Animal(r[0],r[1],r[2],r[3], i(r[4]), r[5], d(r[6]), b(r[7]), r[8], r[9], b(r[10])));
+                list.add(parse(r));
             }
             return list;
         }
         static void saveAll(List<Animal> items){
             List<String[]> rows = new ArrayList<>();
-            for (Animal a: items){
-                rows.add(new String[]{a.id,a.species,a.breed,a.sex,Integer.toString(a.ageMonths),a.microchipId,Double.toString(a.price),Boolean.toString(a.onHold),a.supplierName,a.notes,Boolean.toString(a.sold)});
+            for (Animal a: items) rows.add(row(a));
+            CsvFiles.write(CsvFiles.p("animals.csv"), HEADER, rows);
+        }
+        static final String HEADER = "id,species,breed,sex,ageMonths,microchipId,price,onHold,supplierName,notes,sold";
+        static Animal parse(String[] r){
+            return new Animal(r[0], Dict.of(r[1]), Dict.of(r[2]), Dict.of(r[3]), i(r[4]), r[5], d(r[6]), b(r[7]), Dict.of(r[8]), r[9], b(r[10]));
+        }
+        static String[] row(Animal a){
+            return new String[]{a.id,a.species,a.breed,a.sex,Integer.toString(a.ageMonths),a.microchipId,Double.toString(a.price),Boolean.toString(a.onHold),a.supplierName,a.notes,Boolean.toString(a.sold)};
+        }
+
+        static final ChangeFeed<Animal> changes = new ChangeFeed<>();
+
+        static void insert(Animal a){
+            lockDb();
+            try {
+                List<Animal> all = all(); all.add(a); saveAll(all);
+                changes.publish(ChangeKind.INSERT, a.id, a);
+            } finally { DB_LOCK.unlock(); }
+        }
+        static Animal update(String id, Consumer<Animal> edit){
+            lockDb();
+            try {
+                List<Animal> all = all(); Animal hit = null;
+                for (Animal x : all) if (x.id.equals(id)){ edit.accept(x); hit = x; }
+                if (hit==null) return null;
+                saveAll(all);
+                changes.publish(ChangeKind.UPDATE, id, hit);
+                return hit;
+            } finally { DB_LOCK.unlock(); }
+        }
+
+        private static volatile AnimalIndex index;
+        // built from one full read on first use, then kept current from the change feed; the
+        // read and the subscribe happen under DB_LOCK so no write can fall between them
+        static AnimalIndex index(){
+            if (index!=null) return index;
+            lockDb();
+            try {
+                if (index==null){
+                    AnimalIndex ix = new AnimalIndex();
+                    ix.load(all());
+                    changes.subscribe(ix::apply);
+                    index = ix;
+                }
+                return index;
+            } finally { DB_LOCK.unlock(); }
+        }
+    }
+
+    // Bitmap index over the low-cardinality Animal attributes (species, breed, sex,
+    // onHold, sold). Every animal owns a slot; each attribute value owns a BitSet of
+    // slots, so a filter like "unsold, not on hold, female Silkie chickens" is a few ANDs.
+    static class AnimalIndex {
+        static class Filter {
+            String species, breed, sex;   // null = any
+            Boolean onHold, sold;         // null = either
+            boolean test(Animal a){
+                return (species==null || species.equals(key(a.species))) && (breed==null || breed.equals(key(a.breed)))
+                    && (sex==null || sex.equals(key(a.sex)))
+                    && (onHold==null || onHold==a.onHold) && (sold==null || sold==a.sold);
             }
-            CsvFiles.write(CsvFiles.p("animals.csv"), "id,species,breed,sex,ageMonths,microchipId,price,onHold,supplierName,notes,sold", rows);
+        }
+
+        final List<Animal> slots = new ArrayList<>();
+        final Map<String,Integer> slotOf = new HashMap<>();
+        final Map<String,BitSet> species = new TreeMap<>(), breed = new TreeMap<>(), sex = new TreeMap<>();
+        final BitSet live = new BitSet(), onHold = new BitSet(), sold = new BitSet();
+
+        static String key(String s){ return s==null? "" : s.trim(); }
+
+        synchronized void load(List<Animal> all){
+            slots.clear(); slotOf.clear(); species.clear(); breed.clear(); sex.clear();
+            live.clear(); onHold.clear(); sold.clear();
+            for (Animal a : all) put(a);
+        }
+
+        synchronized void apply(Change<Animal> c){
+            Integer slot = slotOf.get(c.id);
+            if (slot!=null) unset(slot);
+            if (c.kind==ChangeKind.DELETE){ if (slot!=null) slotOf.remove(c.id); return; }
+            if (slot==null) put(c.row); else set(slot, c.row);
+        }
+
+        synchronized List<Animal> query(Filter f){
+            BitSet bits = (BitSet) live.clone();
+            if (f.species!=null) bits.and(species.getOrDefault(f.species, new BitSet()));
+            if (f.breed!=null) bits.and(breed.getOrDefault(f.breed, new BitSet()));
+            if (f.sex!=null) bits.and(sex.getOrDefault(f.sex, new BitSet()));
+            if (f.onHold!=null){ if (f.onHold) bits.and(onHold); else bits.andNot(onHold); }
+            if (f.sold!=null){ if (f.sold) bits.and(sold); else bits.andNot(sold); }
+            List<Animal> out = new ArrayList<>(bits.cardinality());
+            for (int k=bits.nextSetBit(0); k>=0; k=bits.nextSetBit(k+1)) out.add(slots.get(k));
+            return out;
+        }
+
+        // distinct values that currently have at least one animal, for filter drop-downs
+        synchronized List<String> values(String attr){
+            Map<String,BitSet> m = attr.equals("species")? species : attr.equals("breed")? breed : sex;
+            List<String> out = new ArrayList<>();
+            for (Map.Entry<String,BitSet> e : m.entrySet()) if (e.getValue().intersects(live)) out.add(e.getKey());
+            return out;
+        }
+
+        private void put(Animal a){
+            int slot = slots.size();
+            slots.add(a); slotOf.put(a.id, slot);
+            set(slot, a);
+        }
+
+        private void set(int slot, Animal a){
+            slots.set(slot, a);
+            live.set(slot);
+            species.computeIfAbsent(key(a.species), k -> new BitSet()).set(slot);
+            breed.computeIfAbsent(key(a.breed), k -> new BitSet()).set(slot);
+            sex.computeIfAbsent(key(a.sex), k -> new BitSet()).set(slot);
+            onHold.set(slot, a.onHold);
+            sold.set(slot, a.sold);
+        }
+
+        private void unset(int slot){
+            Animal a = slots.get(slot);
+            live.clear(slot); onHold.clear(slot); sold.clear(slot);
+            BitSet b;
+            if ((b = species.get(key(a.species)))!=null) b.clear(slot);
+            if ((b = breed.get(key(a.breed)))!=null) b.clear(slot);
+            if ((b = sex.get(key(a.sex)))!=null) b.clear(slot);
         }
     }
 
@@ -304,6 +620,16 @@ public class FarmStoreManager extends JFrame {
             CsvFiles.write(CsvFiles.p("customers.csv"), "id,fullName,phone,email", rows);
         }
         static Optional<Customer> byId(String id){ return all().stream().filter(c->c.id.equals(id)).findFirst(); }
+        // false when the id is already taken
+        static boolean insert(Customer c){
+            lockDb();
+            try {
+                List<Customer> all = all();
+                if (all.stream().anyMatch(x -> x.id.equals(c.id))) return false;
+                all.add(c); saveAll(all);
+                return true;
+            } finally { DB_LOCK.unlock(); }
+        }
     }
 
     static class ServiceRepo {
@@ -321,6 +647,16 @@ public class FarmStoreManager extends JFrame {
             CsvFiles.write(CsvFiles.p("services.csv"), "id,name,description,basePrice,durationMinutes", rows);
         }
         static Optional<Service> byId(String id){ return all().stream().filter(s->s.id.equals(id)).findFirst(); }
+        // false when the id is already taken
+        static boolean insert(Service s){
+            lockDb();
+            try {
+                List<Service> all = all();
+                if (all.stream().anyMatch(x -> x.id.equals(s.id))) return false;
+                all.add(s); saveAll(all);
+                return true;
+            } finally { DB_LOCK.unlock(); }
+        }
     }
 
     static class AppointmentRepo {
@@ -328,17 +664,43 @@ public class FarmStoreManager extends JFrame {
             List<Appointment> list=new ArrayList<>();
             for (String[] r: CsvFiles.read(CsvFiles.p("appointments.csv"))){
                 if (r.length<8) continue;
-                list.add(new Appointment(r[0], r[1], n(r[2]), r[3],
-                        LocalDateTime.parse(r[4]), LocalDateTime.parse(r[5]), r[6], d(r[7])));
+                list.add(parse(r));
             }
             return list;
         }
+        static Appointment parse(String[] r){
+            return new Appointment(r[0], Dict.of(r[1]), n(r[2]), Dict.of(r[3]),
+                    LocalDateTime.parse(r[4]), LocalDateTime.parse(r[5]), Dict.of(r[6]), d(r[7]));
+        }
         static void saveAll(List<Appointment> items){
             List<String[]> rows = new ArrayList<>();
-            for (Appointment a: items){
-                rows.add(new String[]{a.id,a.customerId,nn(a.animalId),a.serviceId,a.start.toString(),a.end.toString(),a.status,Double.toString(a.paidAmount)});
-            }
-            CsvFiles.write(CsvFiles.p("appointments.csv"), "id,customerId,animalId,serviceId,start,end,status,paidAmount", rows);
+            for (Appointment a: items) rows.add(row(a));
+            CsvFiles.write(CsvFiles.p("appointments.csv"), HEADER, rows);
+        }
+        static final String HEADER = "id,customerId,animalId,serviceId,start,end,status,paidAmount";
+        static String[] row(Appointment a){
+            return new String[]{a.id,a.customerId,nn(a.animalId),a.serviceId,a.start.toString(),a.end.toString(),a.status,Double.toString(a.paidAmount)};
+        }
+
+        static final ChangeFeed<Appointment> changes = new ChangeFeed<>();
+
+        static void insert(Appointment ap){
+            lockDb();
+            try {
+                List<Appointment> all = all(); all.add(ap); saveAll(all);
+                changes.publish(ChangeKind.INSERT, ap.id, ap);
+            } finally { DB_LOCK.unlock(); }
+        }
+        static Appointment update(String id, Consumer<Appointment> edit){
+            lockDb();
+            try {
+                List<Appointment> all = all(); Appointment hit = null;
+                for (Appointment x : all) if (x.id.equals(id)){ edit.accept(x); hit = x; }
+                if (hit==null) return null;
+                saveAll(all);
+                changes.publish(ChangeKind.UPDATE, id, hit);
+                return hit;
+            } finally { DB_LOCK.unlock(); }
         }
     }
 
@@ -347,23 +709,92 @@ public class FarmStoreManager extends JFrame {
             List<Sale> list=new ArrayList<>();
             for (String[] r: CsvFiles.read(CsvFiles.p("sales.csv"))){
                 if (r.length<9) continue;
-                Sale s = new Sale();
-                s.id = r[0]; s.dateTime = LocalDateTime.parse(r[1]); s.customerId = n(r[2]);
-                s.subTotal=d(r[3]); s.tax=d(r[4]); s.total=d(r[5]); s.paidCash=d(r[6]); s.paidCard=d(r[7]);
-                s.lines = linesFromJson(r[8]);
-                list.add(s);
+                list.add(parse(r));
             }
             return list;
         }
 
         static void saveAll(List<Sale> items){
             List<String[]> rows = new ArrayList<>();
-            for (Sale s: items){
-                rows.add(new String[]{s.id,s.dateTime.toString(),nn(s.customerId),
-                        Double.toString(s.subTotal),Double.toString(s.tax),Double.toString(s.total),
-                        Double.toString(s.paidCash),Double.toString(s.paidCard), linesToJson(s.lines)});
+            for (Sale s: items) rows.add(row(s));
+            CsvFiles.write(CsvFiles.p("sales.csv"), HEADER, rows);
+        }
+        static final String HEADER = "id,dateTime,customerId,subTotal,tax,total,paidCash,paidCard,linesJson";
+        static Sale parse(String[] r){
+            Sale s = new Sale();
+            s.id = r[0]; s.dateTime = LocalDateTime.parse(r[1]); s.customerId = Dict.of(n(r[2]));
+            s.subTotal=d(r[3]); s.tax=d(r[4]); s.total=d(r[5]); s.paidCash=d(r[6]); s.paidCard=d(r[7]);
+            s.lines = linesFromJson(r[8]);
+            return s;
+        }
+        static String[] row(Sale s){
+            return new String[]{s.id,s.dateTime.toString(),nn(s.customerId),
+                    Double.toString(s.subTotal),Double.toString(s.tax),Double.toString(s.total),
+                    Double.toString(s.paidCash),Double.toString(s.paidCard), linesToJson(s.lines)};
+        }
+
+        static final ChangeFeed<Sale> changes = new ChangeFeed<>();
+
+        // receipts are immutable, so a new sale is a single appended row; a failed append is
+        // cut back off so no half row is left behind. The row's byte offset goes into
+        // sales_index.csv right after. Publishing is up to the caller.
+        static void append(Sale sale) throws IOException {
+            Path p = CsvFiles.p("sales.csv");
+            long size = Files.exists(p)? Files.size(p) : 0;
+            String[] row = row(sale);
+            try { CsvFiles.append(p, HEADER, row); }
+            catch (IOException e) {
+                try (java.nio.channels.FileChannel ch = java.nio.channels.FileChannel.open(p, StandardOpenOption.WRITE)) { ch.truncate(size); }
+                catch (IOException ignored) {}
+                throw e;
+            }
+            long offset = Files.size(p) - (String.join(",", CsvFiles.safe(row))+System.lineSeparator()).getBytes(java.nio.charset.StandardCharsets.UTF_8).length;
+            SaleIndex.appended(offset, sale);
+        }
+
+        private static volatile SaleIndex index;
+        // loaded from sales_index.csv on first use (plus any receipts appended after its last
+        // row), then kept current by append(); loaded under DB_LOCK so no sale falls in between
+        static SaleIndex index(){
+            if (index!=null) return index;
+            lockDb();
+            try {
+                if (index==null) index = SaleIndex.load();
+                return index;
+            } finally { DB_LOCK.unlock(); }
+        }
+        static SaleIndex loadedIndex(){ return index; }
+
+        // receipts at the given sales.csv byte offsets, in the order given
+        static List<Sale> readAt(long[] offsets){
+            List<Sale> out = new ArrayList<>(offsets.length);
+            if (offsets.length==0) return out;
+            try (RandomAccessFile raf = new RandomAccessFile(CsvFiles.p("sales.csv").toFile(), "r")) {
+                for (long off : offsets){
+                    String line = lineAt(raf, off);
+                    String[] r = line==null? null : CsvFiles.splitCsv(line);
+                    if (r!=null && r.length>=9) out.add(parse(r));
+                }
+            } catch (IOException e) { e.printStackTrace(); }
+            return out;
+        }
+
+        // the complete line starting at off (without its line break), leaving the file pointer
+        // at the next line; null past the end or for an unterminated last line
+        static String lineAt(RandomAccessFile raf, long off) throws IOException {
+            if (off<0 || off>=raf.length()) return null;
+            raf.seek(off);
+            ByteArrayOutputStream buf = new ByteArrayOutputStream(256);
+            byte[] chunk = new byte[512];
+            for (int n; (n = raf.read(chunk))>0; ){
+                int nl = -1;
+                for (int k=0;k<n;k++) if (chunk[k]=='\n'){ nl = k; break; }
+                if (nl<0){ buf.write(chunk, 0, n); continue; }
+                buf.write(chunk, 0, nl);
+                raf.seek(off + buf.size() + 1);
+                return buf.toString(java.nio.charset.StandardCharsets.UTF_8).replace("\r", "");
             }
-            CsvFiles.write(CsvFiles.p("sales.csv"), "id,dateTime,customerId,subTotal,tax,total,paidCash,paidCard,linesJson", rows);
+            return null;
         }
         // tiny pseudo-JSON for lines (itemType|refId|description|qty|unitPrice|taxable|lineTotal;...)
         static String linesToJson(List<SaleLine> ls){
@@ -377,13 +808,15 @@ public class FarmStoreManager extends JFrame {
             return sb.toString();
         }
         static List<SaleLine> linesFromJson(String s){
-            List<SaleLine> out = new ArrayList<>();
-            if (s==null || s.isBlank()) return out;
-            for (String part: s.split(";")){
+            if (s==null || s.isBlank()) return new ArrayList<>();
+            String[] parts = s.split(";");
+            List<SaleLine> out = new ArrayList<>(parts.length);
+            for (String part: parts){
                 String[] f = part.split("\\|", -1);
                 if (f.length<7) continue;
                 SaleLine l = new SaleLine();
-                l.itemType=f[0]; l.refId=f[1]; l.description=f[2];
+                l.itemType=Dict.of(f[0]); l.description=Dict.of(f[2]);
+                l.refId = "ANIMAL".equals(l.itemType)? f[1] : Dict.of(f[1]); // each animal sells once, so no sharing to gain
                 l.qty=i(f[3]); l.unitPrice=d(f[4]); l.taxable=Boolean.parseBoolean(f[5]); l.lineTotal=d(f[6]);
                 out.add(l);
             }
@@ -392,6 +825,386 @@ public class FarmStoreManager extends JFrame {
         static String escape(String s){ if (s==null) return ""; return s.replace("|","/").replace(";","/"); }
     }
 
+    // Supplier price/catalog import: chunks are parsed + validated in parallel, then merged
+    // into inventory by SKU in a single pass and saved with one write.
+    // Columns are matched by header name: sku,name,category,unitPrice,taxable[,qtyOnHand]
+    static class BulkImport {
+        static final int CHUNK_ROWS = 4096;
+
+        static class Row {
+            int line; String sku, name, category; double unitPrice; Boolean taxable; Integer qty;
+        }
+
+        static class Result {
+            int rows, inserted, updated;
+            List<String[]> errors = new ArrayList<>(); // line,reason,raw
+            long nanos;
+            double seconds(){ return nanos / 1e9; }
+            double rowsPerSecond(){ return nanos==0? 0 : rows / seconds(); }
+        }
+
+        static Result run(Path file) throws IOException {
+            long t0 = System.nanoTime();
+            List<String> lines = readLines(file);
+            Result res = new Result();
+            if (lines.isEmpty()){ res.errors.add(new String[]{"1","empty file",""}); return res; }
+
+            Map<String,Integer> cols = new HashMap<>();
+            String[] head = CsvFiles.splitCsv(lines.get(0));
+            for (int c=0;c<head.length;c++) cols.put(head[c].trim().toLowerCase(), c);
+            if (!cols.containsKey("sku") || !cols.containsKey("unitprice")){
+                res.errors.add(new String[]{"1","header must contain sku and unitPrice",lines.get(0)});
+                return res;
+            }
+
+            // parse: one task per chunk, results kept in chunk order so "last row wins" is stable
+            int n = lines.size()-1, chunks = (n + CHUNK_ROWS - 1) / CHUNK_ROWS;
+            List<List<Row>> parsed = new ArrayList<>(Collections.nCopies(chunks, null));
+            List<List<String[]>> errs = new ArrayList<>(Collections.nCopies(chunks, null));
+            java.util.stream.IntStream.range(0, chunks).parallel().forEach(k -> {
+                List<Row> rows = new ArrayList<>(); List<String[]> bad = new ArrayList<>();
+                int from = 1 + k*CHUNK_ROWS, to = Math.min(lines.size(), from + CHUNK_ROWS);
+                for (int ln=from; ln<to; ln++){
+                    String raw = lines.get(ln);
+                    if (raw.isBlank()) continue;
+                    String err = parseRow(CsvFiles.splitCsv(raw), cols, ln+1, rows);
+                    if (err!=null) bad.add(new String[]{Integer.toString(ln+1), err, raw});
+                }
+                parsed.set(k, rows); errs.set(k, bad);
+            });
+            for (List<String[]> e : errs) res.errors.addAll(e);
+
+            // merge: one pass over the file's rows against a SKU map of the current inventory
+            lockDb(); try { merge(parsed, res); } finally { DB_LOCK.unlock(); }
+            res.errors.sort(Comparator.comparingInt(e -> i(e[0])));
+            res.nanos = System.nanoTime()-t0;
+            return res;
+        }
+
+        static void merge(List<List<Row>> parsed, Result res){
+            List<InventoryItem> inv = InventoryRepo.all();
+            Map<String,InventoryItem> bySku = new HashMap<>();
+            for (InventoryItem it : inv) bySku.put(it.sku.toLowerCase(), it);
+            Map<InventoryItem,ChangeKind> touched = new LinkedHashMap<>();
+            for (List<Row> chunk : parsed) for (Row r : chunk){
+                InventoryItem it = bySku.get(r.sku.toLowerCase());
+                if (it==null){
+                    if (r.name==null){ res.errors.add(new String[]{Integer.toString(r.line),"new SKU needs a name",r.sku}); continue; }
+                    it = new InventoryItem(null, r.sku, r.name, nn(r.category), r.unitPrice, r.qty==null? 0 : r.qty, r.taxable==null || r.taxable);
+                    inv.add(it); bySku.put(r.sku.toLowerCase(), it);
+                    touched.put(it, ChangeKind.INSERT);
+                    res.inserted++;
+                } else {
+                    it.unitPrice = r.unitPrice;
+                    if (r.taxable!=null) it.taxable = r.taxable;
+                    if (r.category!=null) it.category = r.category;
+                    if (r.name!=null) it.name = r.name;
+                    touched.putIfAbsent(it, ChangeKind.UPDATE);
+                    res.updated++;
+                }
+                res.rows++;
+            }
+            if (res.rows>0) InventoryRepo.saveAll(inv);
+            for (Map.Entry<InventoryItem,ChangeKind> e : touched.entrySet()) InventoryRepo.changes.publish(e.getValue(), e.getKey().id, e.getKey());
+        }
+
+        // returns an error message, or null after adding the parsed row to out
+        static String parseRow(String[] f, Map<String,Integer> cols, int line, List<Row> out){
+            Row r = new Row(); r.line = line;
+            r.sku = n(col(f, cols, "sku"));
+            if (r.sku==null) return "missing sku";
+            r.sku = r.sku.trim();
+            String price = col(f, cols, "unitprice");
+            try { r.unitPrice = Double.parseDouble(price.trim()); } catch (Exception e){ return "bad unitPrice"; }
+            if (r.unitPrice<0 || Double.isNaN(r.unitPrice) || Double.isInfinite(r.unitPrice)) return "bad unitPrice";
+            String tax = n(col(f, cols, "taxable"));
+            if (tax==null) r.taxable = null; // column absent or blank: keep the current flag
+            else if (tax.trim().equalsIgnoreCase("true") || tax.trim().equalsIgnoreCase("yes")) r.taxable = true;
+            else if (tax.trim().equalsIgnoreCase("false") || tax.trim().equalsIgnoreCase("no")) r.taxable = false;
+            else return "bad taxable";
+            r.name = n(col(f, cols, "name"));
+            r.category = n(col(f, cols, "category"));
+            String qty = n(col(f, cols, "qtyonhand"));
+            if (qty!=null){
+                try { r.qty = Integer.parseInt(qty.trim()); } catch (Exception e){ return "bad qtyOnHand"; }
+                if (r.qty<0) return "bad qtyOnHand";
+            }
+            out.add(r);
+            return null;
+        }
+
+        // supplier files often come out of Excel: a UTF-8 byte-order mark is dropped, and a file
+        // that isn't valid UTF-8 is read as Windows-1252 (Excel's plain "CSV" on Windows)
+        static List<String> readLines(Path file) throws IOException {
+            byte[] bytes = Files.readAllBytes(file);
+            int from = (bytes.length>=3 && (bytes[0]&0xFF)==0xEF && (bytes[1]&0xFF)==0xBB && (bytes[2]&0xFF)==0xBF)? 3 : 0;
+            String text;
+            try {
+                text = java.nio.charset.StandardCharsets.UTF_8.newDecoder()
+                        .decode(java.nio.ByteBuffer.wrap(bytes, from, bytes.length-from)).toString();
+            } catch (java.nio.charset.CharacterCodingException e){
+                text = new String(bytes, from, bytes.length-from, java.nio.charset.Charset.forName("windows-1252"));
+            }
+            return text.lines().collect(java.util.stream.Collectors.toList());
+        }
+
+        static String col(String[] f, Map<String,Integer> cols, String name){
+            Integer c = cols.get(name);
+            return (c==null || c>=f.length)? null : f[c];
+        }
+
+        static Path writeErrors(Result res){
+            Path p = CsvFiles.p("import_errors.csv");
+            CsvFiles.write(p, "line,reason,raw", res.errors);
+            return p;
+        }
+    }
+
+    // Secondary indexes over sales: customer id, line refId (item/animal id) and calendar
+    // day to the byte offsets of receipts in sales.csv, plus running lifetime spend per
+    // customer. Receipts themselves stay on disk and are read back by offset on query.
+    // The index is persisted in sales_index.csv (offset,saleId,customerId,day,total,refs),
+    // one row appended per sale, so a restart reads that small file instead of sales.csv.
+    static class SaleIndex {
+        static final String FILE = "sales_index.csv";
+        static final String HEADER = "offset,saleId,customerId,day,total,refs";
+        private static boolean fileBehind;   // an index append failed; load() catches up from sales.csv
+
+        // offsets in write order, each with the receipt's day for date-range filtering
+        static class Offsets {
+            long[] at = new long[4]; int[] day = new int[4]; int n;
+            void add(long off, int epochDay){
+                if (n==at.length){ at = Arrays.copyOf(at, n*2); day = Arrays.copyOf(day, n*2); }
+                at[n] = off; day[n] = epochDay; n++;
+            }
+        }
+
+        final Map<String,Offsets> byCustomer = new HashMap<>();
+        final Map<String,Offsets> byRef = new HashMap<>();
+        final TreeMap<java.time.LocalDate,Offsets> byDay = new TreeMap<>();
+        final Map<String,Double> spend = new HashMap<>();
+        long last = -1;   // offset of the newest indexed receipt
+
+        synchronized void add(long off, String customerId, java.time.LocalDate day, double total, String[] refs){
+            if (off<=last) return;
+            last = off;
+            int d = (int) day.toEpochDay();
+            if (customerId!=null){
+                byCustomer.computeIfAbsent(customerId, k -> new Offsets()).add(off, d);
+                spend.merge(customerId, total, Double::sum);
+            }
+            for (String ref : refs) byRef.computeIfAbsent(ref, k -> new Offsets()).add(off, d);
+            byDay.computeIfAbsent(day, k -> new Offsets()).add(off, d);
+        }
+
+        static String[] refs(Sale s){
+            LinkedHashSet<String> refs = new LinkedHashSet<>();
+            for (SaleLine l : s.lines) if (l.refId!=null && !l.refId.isEmpty()) refs.add(l.refId);
+            return refs.toArray(new String[0]);
+        }
+
+        static String[] row(long off, Sale s){
+            return new String[]{Long.toString(off), s.id, nn(s.customerId), s.dateTime.toLocalDate().toString(),
+                    Double.toString(s.total), String.join(";", refs(s))};
+        }
+
+        // called by SaleRepo.append under DB_LOCK once the receipt is on disk
+        static void appended(long off, Sale s){
+            if (!fileBehind){
+                try { CsvFiles.append(CsvFiles.p(FILE), HEADER, row(off, s)); }
+                catch (IOException e) { e.printStackTrace(); fileBehind = true; }
+            }
+            SaleIndex ix = SaleRepo.loadedIndex();
+            if (ix!=null) ix.add(off, s.customerId, s.dateTime.toLocalDate(), s.total, refs(s));
+        }
+
+        // reads sales_index.csv, checks its last row still points at the same receipt (else
+        // sales.csv was replaced and the index is rebuilt), then indexes any receipts after it
+        static SaleIndex load(){
+            Path idx = CsvFiles.p(FILE), sales = CsvFiles.p("sales.csv");
+            SaleIndex ix = new SaleIndex();
+            String lastId = null;
+            for (String[] r : CsvFiles.read(idx)){
+                if (r.length<6) continue;
+                try {
+                    String[] refs = r[5].isBlank()? new String[0] : r[5].split(";");
+                    ix.add(Long.parseLong(r[0].trim()), n(r[2]), java.time.LocalDate.parse(r[3].trim()), d(r[4]), refs);
+                    lastId = r[1];
+                } catch (RuntimeException e) { /* damaged row: the catch-up below re-reads sales.csv past it */ }
+            }
+            long from = 0;
+            try (RandomAccessFile raf = new RandomAccessFile(sales.toFile(), "r")) {
+                if (ix.last>=0){
+                    String line = SaleRepo.lineAt(raf, ix.last);
+                    if (line!=null && CsvFiles.splitCsv(line)[0].equals(lastId)) from = raf.getFilePointer();
+                    else { ix = new SaleIndex(); Files.deleteIfExists(idx); }
+                }
+                // catch up: every complete row after 'from', indexed and written to the index file
+                List<String[]> rows = new ArrayList<>();
+                for (long off = from; ; off = raf.getFilePointer()){
+                    String line = SaleRepo.lineAt(raf, off);
+                    if (line==null) break;
+                    String[] r = CsvFiles.splitCsv(line);
+                    if (off==0 || r.length<9) continue;   // header
+                    try {
+                        Sale s = SaleRepo.parse(r);
+                        ix.add(off, s.customerId, s.dateTime.toLocalDate(), s.total, refs(s));
+                        rows.add(row(off, s));
+                    } catch (RuntimeException e) { /* unreadable receipt: not indexed */ }
+                }
+                if (!rows.isEmpty()){
+                    boolean fresh = !Files.exists(idx) || Files.size(idx)==0;
+                    try (PrintWriter pw = new PrintWriter(Files.newBufferedWriter(idx, StandardOpenOption.CREATE, StandardOpenOption.APPEND))) {
+                        if (fresh) pw.println(HEADER);
+                        for (String[] r : rows) pw.println(String.join(",", CsvFiles.safe(r)));
+                    }
+                }
+                fileBehind = false;
+            } catch (IOException e) { e.printStackTrace(); }
+            return ix;
+        }
+
+        List<Sale> forCustomer(String customerId){
+            long[] offs;
+            synchronized (this){ Offsets o = byCustomer.get(customerId); offs = o==null? new long[0] : Arrays.copyOf(o.at, o.n); }
+            return SaleRepo.readAt(offs);
+        }
+
+        synchronized double lifetimeSpend(String customerId){ return spend.getOrDefault(customerId, 0.0); }
+
+        // sales containing refId dated within [from, to]; the day kept with each offset filters
+        // the ref's list without touching sales.csv
+        List<Sale> forRef(String refId, java.time.LocalDate from, java.time.LocalDate to){
+            long[] offs; int k = 0;
+            synchronized (this){
+                Offsets o = byRef.get(refId);
+                if (o==null) return new ArrayList<>();
+                offs = new long[o.n];
+                for (int j=0;j<o.n;j++) if (o.day[j]>=from.toEpochDay() && o.day[j]<=to.toEpochDay()) offs[k++] = o.at[j];
+            }
+            return SaleRepo.readAt(Arrays.copyOf(offs, k));
+        }
+    }
+
+    // Streaming sales velocity per item: a time-decayed EWMA of units/day, updated in O(1) per
+    // ITEM sale line from the sale feed, with on-hand qty kept current from the inventory feed.
+    // Days of cover = onHand / rate. State is saved to velocity.csv at End Day, so sales
+    // history is never rescanned.
+    static class StockVelocity {
+        static final double TAU_DAYS = 7.0;        // EWMA time constant
+        static final double REORDER_DAYS = 7.0;    // supplier lead time + safety: alert below this cover
+        static final double TARGET_DAYS = 21.0;    // suggested order tops cover back up to this
+        static final String FILE = "velocity.csv";
+
+        static class Stat {
+            String id, sku, name; int onHand; double rate; long at; // rate in units/day as of epoch-second 'at'
+            boolean alerted;                                          // already reported as low; reset once cover recovers
+            double rateAt(long now){ return at==0? 0 : rate*Math.exp(-Math.max(0, now-at)/86400.0/TAU_DAYS); }
+            double cover(long now){ double r = rateAt(now); return onHand<=0? 0 : r<=0? Double.POSITIVE_INFINITY : onHand/r; }
+            boolean low(long now){ return cover(now) < REORDER_DAYS; }
+        }
+
+        private static volatile StockVelocity tracker;
+        final Map<String,Stat> stats = new HashMap<>();
+        final List<Consumer<Stat>> lowStock = new CopyOnWriteArrayList<>();
+
+        // loaded and subscribed under DB_LOCK, so no sale or stock change slips in between
+        static StockVelocity tracker(){
+            if (tracker!=null) return tracker;
+            lockDb();
+            try {
+                if (tracker==null){
+                    StockVelocity v = new StockVelocity();
+                    // later rows win: each sale appends fresh rates, End Day compacts the file
+                    for (String[] r : CsvFiles.read(CsvFiles.p(FILE))){
+                        if (r.length<3) continue;
+                        long at;
+                        try { at = Long.parseLong(r[2].trim()); } catch (NumberFormatException e){ continue; } // damaged row
+                        Stat st = v.stat(r[0]); st.rate = d(r[1]); st.at = at;
+                    }
+                    for (InventoryItem it : InventoryRepo.all()) v.onInventory(new Change<>(ChangeKind.UPDATE, it.id, it));
+                    SaleRepo.changes.subscribe(v::onSale);
+                    InventoryRepo.changes.subscribe(v::onInventory);
+                    tracker = v;
+                }
+                return tracker;
+            } finally { DB_LOCK.unlock(); }
+        }
+        // null until something asked for the tracker; End Day only saves a live one
+        static StockVelocity existing(){ return tracker; }
+
+        static long epoch(LocalDateTime t){ return t.atZone(java.time.ZoneId.systemDefault()).toEpochSecond(); }
+
+        synchronized Stat stat(String id){
+            return stats.computeIfAbsent(id, k -> { Stat st = new Stat(); st.id = k; return st; });
+        }
+
+        void onSale(Change<Sale> c){
+            if (c.kind!=ChangeKind.INSERT) return;
+            List<Stat> fired = new ArrayList<>();
+            synchronized (this){
+                long t = epoch(c.row.dateTime);
+                for (SaleLine l : c.row.lines){
+                    if (!l.itemType.equals("ITEM")) continue;
+                    Stat st = stat(l.refId);
+                    st.rate = st.rateAt(t) + l.qty/TAU_DAYS;
+                    st.at = Math.max(st.at, t);
+                    persist(st);
+                    if (crossedLow(st)) fired.add(st);
+                }
+            }
+            for (Stat st : fired) for (Consumer<Stat> l : lowStock) l.accept(st);
+        }
+
+        void onInventory(Change<InventoryItem> c){
+            Stat fired = null;
+            synchronized (this){
+                if (c.kind==ChangeKind.DELETE){ stats.remove(c.id); return; }
+                Stat st = stat(c.id);
+                st.sku = c.row.sku; st.name = c.row.name; st.onHand = c.row.qtyOnHand;
+                if (crossedLow(st)) fired = st;
+            }
+            if (fired!=null) for (Consumer<Stat> l : lowStock) l.accept(fired);
+        }
+
+        // true once per dip below REORDER_DAYS of cover, for items that have sold at all
+        private boolean crossedLow(Stat st){
+            if (st.sku==null || st.at==0) return false;
+            boolean low = st.low(epoch(LocalDateTime.now()));
+            boolean fire = low && !st.alerted;
+            st.alerted = low;
+            return fire;
+        }
+
+        // items under REORDER_DAYS of cover (or out of stock), lowest cover first
+        synchronized List<Stat> reorderList(){
+            long now = epoch(LocalDateTime.now());
+            List<Stat> out = new ArrayList<>();
+            for (Stat st : stats.values()) if (st.sku!=null && st.low(now)) out.add(st);
+            out.sort(Comparator.comparingDouble(st -> st.cover(now)));
+            return out;
+        }
+
+        static int suggestedQty(Stat st, long now){
+            return (int) Math.max(0, Math.ceil(st.rateAt(now)*TARGET_DAYS) - st.onHand);
+        }
+
+        static final String HEADER = "itemId,unitsPerDay,asOfEpochSecond";
+
+        // one appended row per update, so a crash or closed window loses nothing
+        private void persist(Stat st){
+            try { CsvFiles.append(CsvFiles.p(FILE), HEADER, new String[]{st.id, Double.toString(st.rate), Long.toString(st.at)}); }
+            catch (IOException e) { e.printStackTrace(); }
+        }
+
+        // rewrites the file with one row per item (End Day)
+        synchronized void save(){
+            List<String[]> rows = new ArrayList<>();
+            for (Stat st : stats.values()) if (st.at!=0) rows.add(new String[]{st.id, Double.toString(st.rate), Long.toString(st.at)});
+            CsvFiles.write(CsvFiles.p(FILE), HEADER, rows);
+        }
+    }
+
     static class LifetimeTransactionRepo {
             static void loadIntoLists() {
                 lifetimeDates.clear();
@@ -438,134 +1251,1280 @@ public class FarmStoreManager extends JFrame {
         sale.subTotal=sub; sale.tax=tax; sale.total=sub+tax;
     }
 
-    // ===================== Panels =====================
+    // ===================== Store Operations =====================
+    // Commit logic shared by the Swing panels and the headless LoadSim driver.
+    // Panels do their dialogs/validation first, then call in here to persist.
 
-    // ---- Store (Inventory & Item Sales) ----
-    class StorePanel extends JPanel {
-        DefaultTableModel model = new DefaultTableModel(new Object[]{"SKU","Name","Category","Price","Qty","Taxable"}, 0){
-            public boolean isCellEditable(int r,int c){return false;}
-        };
-        JTable table = new JTable(model);
+    static class StoreOps {
+        static Sale sellAnimal(Animal a){ return sellAnimal(a, null); }
 
-        StorePanel(){
-            setLayout(new BorderLayout());
-            add(new JScrollPane(table), BorderLayout.CENTER);
+        static Sale sellAnimal(Animal a, String customerId){
+            return checkout(new Cart().customer(customerId).addAnimal(a), false); // simple: animals are paid by card
+        }
 
-            JPanel actions = new JPanel(new FlowLayout(FlowLayout.LEFT));
-            JButton add = new JButton("Add Item");
-            JButton edit = new JButton("Edit");
-            JButton del = new JButton("Delete");
-            JButton sell = new JButton("New Sale");
-            actions.add(add); actions.add(edit); actions.add(del); actions.add(sell);
-            add(actions, BorderLayout.NORTH);
+        // Commits a cart as one batch: each touched file is read once, validated under the
+        // lock against its current contents, and its rewrite staged to <file>.commit-<saleId>.
+        // The commit point is the receipt row appended to sales.csv:
+        //  - a validation, staging or append failure deletes the staged files, so nothing
+        //    on disk changes;
+        //  - once the receipt is written the sale stands; staged files are then swapped in
+        //    (each swap retried a few times). A swap that still fails leaves the store
+        //    "unfinished": lockDb() retries it before any other write is allowed and refuses
+        //    writes until it succeeds, then publishes the held-back change events. A crash
+        //    at this point is finished by recover() at startup.
+        // Every failure is an IllegalStateException with a message for the cashier.
+        static Sale checkout(Cart cart, boolean cash){
+            Sale sale = cart.sale;
+            if (cart.isEmpty()) throw new IllegalStateException("Cart is empty.");
+            lockDb();
+            try {
+                Map<String,Integer> qty = new LinkedHashMap<>();
+                List<String> animalIds = new ArrayList<>();
+                for (SaleLine l : sale.lines){
+                    if (l.itemType.equals("ITEM")) qty.merge(l.refId, l.qty, Integer::sum);
+                    else if (l.itemType.equals("ANIMAL")) animalIds.add(l.refId);
+                }
+
+                List<InventoryItem> inv = null; List<InventoryItem> invChanged = new ArrayList<>();
+                if (!qty.isEmpty()){
+                    inv = InventoryRepo.all();
+                    Map<String,InventoryItem> byId = new HashMap<>();
+                    for (InventoryItem it : inv) byId.put(it.id, it);
+                    for (Map.Entry<String,Integer> e : qty.entrySet()){
+                        InventoryItem it = byId.get(e.getKey());
+                        if (it==null) throw new IllegalStateException("Item no longer exists: "+e.getKey());
+                        if (e.getValue()<=0 || e.getValue()>it.qtyOnHand) throw new IllegalStateException("Invalid qty for "+it.name+" (on hand "+it.qtyOnHand+")");
+                    }
+                    for (Map.Entry<String,Integer> e : qty.entrySet()){
+                        InventoryItem it = byId.get(e.getKey());
+                        it.qtyOnHand -= e.getValue(); invChanged.add(it);
+                    }
+                }
 
-            add.addActionListener(e -> onAdd());
-            edit.addActionListener(e -> onEdit());
-            del.addActionListener(e -> onDelete());
-            sell.addActionListener(e -> onSell());
+                List<Animal> animals = null; List<Animal> animalsChanged = new ArrayList<>();
+                if (!animalIds.isEmpty()){
+                    animals = AnimalRepo.all();
+                    Map<String,Animal> byId = new HashMap<>();
+                    for (Animal a : animals) byId.put(a.id, a);
+                    for (String id : animalIds){
+                        Animal a = byId.get(id);
+                        if (a==null) throw new IllegalStateException("Animal not found: "+id);
+                        if (a.onHold) throw new IllegalStateException("Animal is on hold.");
+                        if (a.sold) throw new IllegalStateException("Already sold.");
+                    }
+                    for (String id : animalIds){ Animal a = byId.get(id); a.sold = true; animalsChanged.add(a); }
+                }
 
-            reload();
+                List<Appointment> appts = null; List<Appointment> apptsChanged = new ArrayList<>();
+                if (!cart.appointments.isEmpty()){
+                    appts = AppointmentRepo.all();
+                    Map<String,Appointment> byId = new HashMap<>();
+                    for (Appointment ap : appts) byId.put(ap.id, ap);
+                    for (String id : cart.appointments.keySet()){
+                        Appointment ap = byId.get(id);
+                        if (ap==null) throw new IllegalStateException("Appointment not found: "+id);
+                        if (ap.status.equals("DONE")) throw new IllegalStateException("Appointment already paid.");
+                    }
+                    for (Map.Entry<String,Double> e : cart.appointments.entrySet()){
+                        Appointment ap = byId.get(e.getKey());
+                        ap.status = "DONE"; ap.paidAmount = e.getValue(); apptsChanged.add(ap);
+                    }
+                }
+
+                if (cash) sale.paidCash = sale.total; else sale.paidCard = sale.total;
+
+                // stage every rewrite, append the receipt (commit point), then swap them in
+                String suffix = COMMIT+sale.id;
+                Map<Path,Path> staged = new LinkedHashMap<>();
+                try {
+                    if (inv!=null) staged.put(CsvFiles.stage(CsvFiles.p("inventory.csv"), suffix, InventoryRepo.HEADER, rows(inv, InventoryRepo::row)), CsvFiles.p("inventory.csv"));
+                    if (animals!=null) staged.put(CsvFiles.stage(CsvFiles.p("animals.csv"), suffix, AnimalRepo.HEADER, rows(animals, AnimalRepo::row)), CsvFiles.p("animals.csv"));
+                    if (appts!=null) staged.put(CsvFiles.stage(CsvFiles.p("appointments.csv"), suffix, AppointmentRepo.HEADER, rows(appts, AppointmentRepo::row)), CsvFiles.p("appointments.csv"));
+                    SaleRepo.append(sale);
+                } catch (IOException e) {
+                    for (Path tmp : staged.keySet()) tmp.toFile().delete();
+                    throw new IllegalStateException("Could not save sale: "+e.getMessage());
+                }
+                String pending = null;
+                for (Map.Entry<Path,Path> e : staged.entrySet()){
+                    String name = e.getValue().getFileName().toString();
+                    Runnable events = () -> {
+                        if (name.equals("inventory.csv")) for (InventoryItem it : invChanged) InventoryRepo.changes.publish(ChangeKind.UPDATE, it.id, it);
+                        if (name.equals("animals.csv")) for (Animal a : animalsChanged) AnimalRepo.changes.publish(ChangeKind.UPDATE, a.id, a);
+                        if (name.equals("appointments.csv")) for (Appointment ap : apptsChanged) AppointmentRepo.changes.publish(ChangeKind.UPDATE, ap.id, ap);
+                    };
+                    if (pending==null){
+                        try { swapRetrying(e.getKey(), e.getValue()); events.run(); continue; }
+                        catch (IOException ex){ unfinished = true; pending = name+" ("+ex.getMessage()+")"; }
+                    }
+                    heldEvents.add(events);   // published by finishPending once the file is in place
+                }
+                SaleRepo.changes.publish(ChangeKind.INSERT, sale.id, sale);
+                addDaily(sale.id, label(sale, animalsChanged), sale.total);
+                if (pending!=null)
+                    throw new IllegalStateException("Sale "+sale.id+" was recorded, but "+pending+" could not be updated yet; no other changes can be saved until it is.");
+                return sale;
+            } finally { DB_LOCK.unlock(); }
         }
 
-        void reload(){
-            model.setRowCount(0);
-            for (InventoryItem it : InventoryRepo.all()){
-                model.addRow(new Object[]{it.sku,it.name,it.category,money(it.unitPrice),it.qtyOnHand,it.taxable});
+        static final String COMMIT = ".commit-";
+        private static boolean unfinished;
+        private static final List<Runnable> heldEvents = new ArrayList<>();
+
+        static void swapRetrying(Path tmp, Path target) throws IOException {
+            for (int attempt = 1; ; attempt++){
+                try { CsvFiles.swap(tmp, target); return; }
+                catch (IOException e){
+                    if (attempt==3) throw e;
+                    try { Thread.sleep(50L*attempt); } catch (InterruptedException ie){ Thread.currentThread().interrupt(); throw e; }
+                }
             }
         }
 
-        Optional<InventoryItem> selected(){
-            int r = table.getSelectedRow(); if (r<0) return Optional.empty();
-            String sku = (String) model.getValueAt(r,0);
-            return InventoryRepo.bySku(sku);
+        // called by lockDb() with DB_LOCK held: swaps in what an earlier checkout could not,
+        // then publishes its held-back events; throws IllegalStateException while it still fails
+        static void finishPending(){
+            if (!unfinished) return;
+            recover();
+            unfinished = false;
+            List<Runnable> events = new ArrayList<>(heldEvents);
+            heldEvents.clear();
+            for (Runnable r : events) r.run();
         }
 
-        void onAdd(){
-            String sku = JOptionPane.showInputDialog(this,"SKU:"); if (sku==null||sku.isBlank()) return;
-            if (InventoryRepo.bySku(sku).isPresent()){ JOptionPane.showMessageDialog(this,"SKU exists."); return; }
-            String name = JOptionPane.showInputDialog(this,"Name:"); if (name==null) return;
-            String cat = JOptionPane.showInputDialog(this,"Category:"); if (cat==null) return;
-            double price = d(JOptionPane.showInputDialog(this,"Unit Price:"));
-            int qty = i(JOptionPane.showInputDialog(this,"Qty On Hand:"));
-            int tax = JOptionPane.showConfirmDialog(this,"Taxable?","Tax",JOptionPane.YES_NO_OPTION);
-            boolean taxable = (tax==JOptionPane.YES_OPTION);
-            List<InventoryItem> all = InventoryRepo.all();
-            all.add(new InventoryItem(null, sku, name, cat, price, qty, taxable));
-            InventoryRepo.saveAll(all);
-            reload();
+        // Finishes checkouts cut short after their commit point: staged <file>.commit-<saleId>
+        // files whose receipt is in sales.csv are swapped in, the rest are deleted.
+        static void recover(){
+            DB_LOCK.lock();
+            try {
+                List<Path> left = new ArrayList<>();
+                try (DirectoryStream<Path> ds = Files.newDirectoryStream(Path.of(DATA_DIR), "*"+COMMIT+"*")) {
+                    for (Path p : ds) left.add(p);
+                } catch (IOException e) { throw new IllegalStateException("Could not check for unfinished sales: "+e.getMessage()); }
+                if (left.isEmpty()) return;
+                Set<String> receipts = new HashSet<>();
+                for (Sale sale : SaleRepo.all()) receipts.add(sale.id);
+                for (Path tmp : left){
+                    String name = tmp.getFileName().toString();
+                    int at = name.indexOf(COMMIT);
+                    try {
+                        if (receipts.contains(name.substring(at+COMMIT.length()))) CsvFiles.swap(tmp, tmp.resolveSibling(name.substring(0, at)));
+                        else Files.delete(tmp);
+                    } catch (IOException e) { throw new IllegalStateException("Could not finish an earlier sale ("+name+"): "+e.getMessage()); }
+                }
+            } finally { DB_LOCK.unlock(); }
         }
 
-        void onEdit(){
-            Optional<InventoryItem> opt = selected(); if (opt.isEmpty()){ JOptionPane.showMessageDialog(this,"Select a row"); return; }
-            InventoryItem it = opt.get();
-            String name = JOptionPane.showInputDialog(this,"Name:", it.name); if (name==null) return;
-            String cat = JOptionPane.showInputDialog(this,"Category:", it.category); if (cat==null) return;
-            double price = d(JOptionPane.showInputDialog(this,"Unit Price:", Double.toString(it.unitPrice)));
-            int qty = i(JOptionPane.showInputDialog(this,"Qty On Hand:", Integer.toString(it.qtyOnHand)));
-            boolean taxable = JOptionPane.showConfirmDialog(this,"Taxable?","Tax", it.taxable?JOptionPane.YES_OPTION:JOptionPane.NO_OPTION)==JOptionPane.YES_OPTION;
-            List<InventoryItem> all = InventoryRepo.all();
-            for (InventoryItem x : all) if (x.id.equals(it.id)){ x.name=name; x.category=cat; x.unitPrice=price; x.qtyOnHand=qty; x.taxable=taxable; }
-            InventoryRepo.saveAll(all);
-            reload();
+        static <T> List<String[]> rows(List<T> items, Function<T,String[]> row){
+            List<String[]> out = new ArrayList<>(items.size());
+            for (T t : items) out.add(row.apply(t));
+            return out;
         }
 
-        void onDelete(){
-            Optional<InventoryItem> opt = selected(); if (opt.isEmpty()){ JOptionPane.showMessageDialog(this,"Select a row"); return; }
-            if (JOptionPane.showConfirmDialog(this,"Delete selected item?","Confirm",JOptionPane.OK_CANCEL_OPTION)!=JOptionPane.OK_OPTION) return;
-            InventoryItem it = opt.get();
-            List<InventoryItem> all = InventoryRepo.all();
-            all.removeIf(x -> x.id.equals(it.id));
-            InventoryRepo.saveAll(all);
-            reload();
+        // daily ledger text, e.g. "2 Dog Kibble 20lb(s), Silkie Chicken, Nail Trim Service";
+        // animals read "<breed> <species>" as the register always wrote them
+        static String label(Sale sale){ return label(sale, List.of()); }
+        static String label(Sale sale, List<Animal> animals){
+            StringBuilder sb = new StringBuilder();
+            for (SaleLine l : sale.lines){
+                if (sb.length()>0) sb.append(", ");
+                Animal a = null;
+                if (l.itemType.equals("ANIMAL")) for (Animal x : animals) if (x.id.equals(l.refId)) a = x;
+                if (a!=null) sb.append(a.breed).append(' ').append(a.species);
+                else if (!l.itemType.equals("ITEM")) sb.append(l.description);
+                else if (l.qty==1) sb.append("1 ").append(l.description);
+                else sb.append(l.qty).append(' ').append(l.description).append("(s)");
+            }
+            return sb.toString();
         }
 
-        void onSell(){
-            String sku = JOptionPane.showInputDialog(this,"Enter SKU to sell:"); if (sku==null) return;
-            Optional<InventoryItem> opt = InventoryRepo.bySku(sku);
-            if (opt.isEmpty()){ JOptionPane.showMessageDialog(this,"Not found"); return; }
-            InventoryItem it = opt.get();
-            int qty = i(JOptionPane.showInputDialog(this,"Qty:"));
-            if (qty<=0 || qty>it.qtyOnHand){ JOptionPane.showMessageDialog(this,"Invalid qty"); return; }
+        // returns null when the slot overlaps an existing appointment
+        static Appointment book(String customerId, Service svc, LocalDateTime when){
+            Appointment ap = new Appointment(null, customerId, null, svc.id, when, when.plusMinutes(svc.durationMinutes), "BOOKED", 0);
 
-            Sale sale = new Sale();
-            sale.lines.add(SaleLine.item(it, qty));
-            computeTotals(sale);
+            lockDb();
+            try {
+                // simple overlap check
+                for (Appointment a : AppointmentRepo.all()){
+                    boolean overlap = a.start.isBefore(ap.end) && ap.start.isBefore(a.end);
+                    if (overlap) return null;
+                }
+                AppointmentRepo.insert(ap);
+            } finally { DB_LOCK.unlock(); }
+            return ap;
+        }
 
-            int method = JOptionPane.showOptionDialog(this,
-                    "Total: "+money(sale.total)+"\nChoose payment method",
-                    "Payment", JOptionPane.DEFAULT_OPTION, JOptionPane.QUESTION_MESSAGE, null,
-                    new Object[]{"Cash","Card"}, "Cash");
-            if (method==0) sale.paidCash = sale.total; else sale.paidCard = sale.total;
+        static Sale payAppointment(Appointment ap, Service svc, double pay){
+            return checkout(new Cart().customer(ap.customerId).addAppointment(ap, svc, pay), false);
+        }
 
+        private static void addDaily(String receiptId, String items, double total){
             dailyDates.add(LocalDateTime.now().format(format));
-            dailyReceipts.add(sale.id);
-            if (qty==1){
-                dailyItems.add("1 " + it.name);
+            dailyReceipts.add(receiptId);
+            dailyItems.add(items);
+            dailyPrices.add(money(total));
+        }
+
+        // End of day: move the daily ledger into lifetime_transactions.csv; returns rows moved
+        static int closeDay(){
+            lockDb();
+            try {
+                int moved = dailyDates.size();
+                moveDailyToLifetime();
+                StockVelocity v = StockVelocity.existing();
+                try { if (v!=null) v.save(); }
+                catch (UncheckedIOException e) { e.printStackTrace(); } // only a compaction: every rate is already appended
+                return moved;
+            } finally { DB_LOCK.unlock(); }
+        }
+        private static void moveDailyToLifetime(){
+            int before = lifetimeDates.size();
+            lifetimeDates.addAll(dailyDates);
+            lifetimeReceipts.addAll(dailyReceipts);
+            lifetimeItems.addAll(dailyItems);
+            lifetimePrices.addAll(dailyPrices);
+
+            // Save lifetime data to CSV; if that fails today's rows stay in the daily ledger
+            try { LifetimeTransactionRepo.saveFromLists(); }
+            catch (UncheckedIOException e) {
+                for (List<String> l : List.of(lifetimeDates, lifetimeReceipts, lifetimeItems, lifetimePrices)) l.subList(before, l.size()).clear();
+                throw e;
             }
-            else{
-                dailyItems.add(Integer.toString(qty) + " " + it.name + "(s)");
+            for (int i = 0; i < dailyDates.size(); i++)
+                ChangeLog.append("LEDGER", ChangeKind.INSERT, dailyReceipts.get(i),
+                        new String[]{dailyDates.get(i), dailyReceipts.get(i), dailyItems.get(i), dailyPrices.get(i)});
+
+            dailyDates.clear();
+            dailyReceipts.clear();
+            dailyItems.clear();
+            dailyPrices.clear();
+        }
+    }
+
+    // ===================== Load Simulation (headless) =====================
+    // Replays a seeded synthetic store day against the repositories, without Swing:
+    //   java FarmStoreManager --simulate [ops] [seed] [dataDir]
+    // Reports throughput, p50/p99 latency per operation and data-dir growth.
+
+    static class LoadSim {
+        static final String[] OPS = {"itemSale","animalSale","book","pay","closeDay","reorderList"};
+
+        final Random rnd;
+        final Map<String,List<Long>> nanos = new LinkedHashMap<>();
+        int rejected;
+        LocalDateTime nextSlot = LocalDateTime.of(2030,1,1,8,0);
+
+        LoadSim(long seed){
+            rnd = new Random(seed);
+            for (String op : OPS) nanos.put(op, new ArrayList<>());
+        }
+
+        public static void main(String[] args){
+            int ops = args.length>0? i(args[0]) : 2000;
+            long seed = args.length>1? Long.parseLong(args[1].trim()) : 42L;
+            try {
+                DATA_DIR = args.length>2? args[2] : Files.createTempDirectory("farmsim").toString();
+            } catch (IOException e) { e.printStackTrace(); return; }
+            System.out.println("Simulating "+ops+" operations (seed "+seed+") in "+DATA_DIR);
+            new LoadSim(seed).run(ops);
+        }
+
+        void run(int ops){
+            setup();
+            long diskBefore = diskBytes();
+            long t0 = System.nanoTime();
+            for (int k=0;k<ops;k++){
+                int roll = rnd.nextInt(100);
+                if (roll<70) itemSale();
+                else if (roll<80) animalSale();
+                else if (roll<90) book();
+                else pay();
             }
-            dailyPrices.add(money(sale.total));
+            timed("closeDay", StoreOps::closeDay);
+            timed("reorderList", () -> StockVelocity.tracker().reorderList());
+            long wall = System.nanoTime()-t0;
+            report(ops, wall, diskBefore, diskBytes());
+        }
 
-            // commit: decrement qty, save inventory & sale
+        // catalog sized like a busy store; stock is high enough that sales never run dry
+        // seeds only once per data folder (a rerun on the same [dataDir] reuses the SIM- rows);
+        // seeded rows are published so they reach the change log like any other insert
+        void setup(){
+            CsvFiles.ensureAllWithSeed();
+            LifetimeTransactionRepo.loadIntoLists();
+            try { ChangeLog.attach(); } catch (IOException e){ throw new UncheckedIOException(e); }
             List<InventoryItem> inv = InventoryRepo.all();
-            for (InventoryItem x : inv) if (x.id.equals(it.id)) x.qtyOnHand -= qty;
-            InventoryRepo.saveAll(inv);
+            if (inv.stream().noneMatch(it -> it.sku.startsWith("SIM-"))){
+                List<InventoryItem> added = new ArrayList<>();
+                for (int k=0;k<500;k++) added.add(new InventoryItem(null, "SIM-"+k, "Sim Item "+k, "Cat"+(k%12), 1+rnd.nextInt(5000)/100.0, 1_000_000, rnd.nextBoolean()));
+                inv.addAll(added);
+                InventoryRepo.saveAll(inv);
+                for (InventoryItem it : added) InventoryRepo.changes.publish(ChangeKind.INSERT, it.id, it);
+
+                List<Animal> animals = AnimalRepo.all(), born = new ArrayList<>();
+                String[] species = {"Chicken","Rabbit","Duck","Goat"};
+                for (int k=0;k<1000;k++) born.add(new Animal(null, species[rnd.nextInt(species.length)], "Mixed", rnd.nextBoolean()?"M":"F", 1+rnd.nextInt(24), "", 5+rnd.nextInt(200), false, "Sim Supplier", "", false));
+                animals.addAll(born);
+                AnimalRepo.saveAll(animals);
+                for (Animal a : born) AnimalRepo.changes.publish(ChangeKind.INSERT, a.id, a);
+            }
+            StockVelocity.tracker();
+        }
+
+        // a basket of 1-5 SKUs, 1-3 units each
+        void itemSale(){
+            List<InventoryItem> inv = InventoryRepo.all();
+            Cart cart = new Cart().customer(rnd.nextBoolean()? "C"+(1+rnd.nextInt(2)) : null);
+            for (int l=0, n=1+rnd.nextInt(5); l<n; l++){
+                InventoryItem it = inv.get(rnd.nextInt(inv.size()));
+                int qty = 1+rnd.nextInt(3);
+                if (cart.qtyOf(it.id)+qty<=it.qtyOnHand) cart.addItem(it, qty);
+            }
+            if (cart.isEmpty()){ rejected++; return; }
+            boolean cash = rnd.nextBoolean();
+            timed("itemSale", () -> StoreOps.checkout(cart, cash));
+        }
+
+        void animalSale(){
+            List<Animal> open = new ArrayList<>();
+            for (Animal a : AnimalRepo.all()) if (!a.sold && !a.onHold) open.add(a);
+            if (open.isEmpty()){ rejected++; return; }
+            Animal a = open.get(rnd.nextInt(open.size()));
+            timed("animalSale", () -> StoreOps.sellAnimal(a));
+        }
+
+        void book(){
+            List<Customer> custs = CustomerRepo.all();
+            List<Service> svcs = ServiceRepo.all();
+            Customer c = custs.get(rnd.nextInt(custs.size()));
+            Service s = svcs.get(rnd.nextInt(svcs.size()));
+            LocalDateTime when = nextSlot;
+            nextSlot = nextSlot.plusMinutes(60);
+            timed("book", () -> { if (StoreOps.book(c.id, s, when)==null) rejected++; });
+        }
+
+        void pay(){
+            List<Appointment> booked = new ArrayList<>();
+            for (Appointment a : AppointmentRepo.all()) if (a.status.equals("BOOKED")) booked.add(a);
+            if (booked.isEmpty()){ rejected++; return; }
+            Appointment ap = booked.get(rnd.nextInt(booked.size()));
+            Service svc = ServiceRepo.byId(ap.serviceId).orElse(null);
+            if (svc==null){ rejected++; return; }
+            timed("pay", () -> StoreOps.payAppointment(ap, svc, svc.basePrice));
+        }
+
+        void timed(String op, Runnable r){
+            long t = System.nanoTime();
+            r.run();
+            nanos.get(op).add(System.nanoTime()-t);
+        }
+
+        void report(int ops, long wall, long diskBefore, long diskAfter){
+            System.out.printf("%-11s %8s %10s %10s %10s%n", "operation", "count", "p50 ms", "p99 ms", "max ms");
+            int done = 0;
+            for (Map.Entry<String,List<Long>> e : nanos.entrySet()){
+                List<Long> l = e.getValue();
+                if (l.isEmpty()) continue;
+                Collections.sort(l);
+                done += l.size();
+                System.out.printf("%-11s %8d %10.3f %10.3f %10.3f%n", e.getKey(), l.size(),
+                        pct(l,50)/1e6, pct(l,99)/1e6, l.get(l.size()-1)/1e6);
+            }
+            System.out.printf("%d ops (%d rejected) in %.2fs = %.1f ops/s%n", done, rejected, wall/1e9, done/(wall/1e9));
+            System.out.printf("data dir: %,d -> %,d bytes (+%,d)%n", diskBefore, diskAfter, diskAfter-diskBefore);
+        }
+
+        static long pct(List<Long> sorted, int p){
+            int idx = (int)Math.ceil(p/100.0*sorted.size())-1;
+            return sorted.get(Math.max(0, Math.min(sorted.size()-1, idx)));
+        }
+
+        static long diskBytes(){
+            try (java.util.stream.Stream<Path> s = Files.list(Path.of(DATA_DIR))) {
+                return s.mapToLong(f -> f.toFile().length()).sum();
+            } catch (IOException e) { return 0; }
+        }
+    }
+
+    // ===================== Heap Footprint Report =====================
+    // Parses N synthetic CSV rows per model through the real loaders, with the string
+    // dictionary off and then on, and prints retained heap per record:
+    //   java -Xmx2g FarmStoreManager --heap-report [records]
+    static class HeapReport {
+        public static void main(String[] args){
+            int n = args.length>0? i(args[0]) : 1_000_000;
+            System.out.printf("%,d records per model%n", n);
+            System.out.printf("%-14s %14s %14s %9s%n", "model", "plain B/rec", "dict B/rec", "saved");
+            measure("InventoryItem", n, k -> InventoryRepo.parse(new String[]{"I-"+k, "SKU-"+k, "Item "+k, "Cat"+(k%20), "9.99", "5", "true"}));
+            measure("Animal", n, k -> AnimalRepo.parse(new String[]{"A-"+k, species(k), breed(k), k%2==0? "F":"M", "6", "", "15.0", "false", "Supplier "+(k%8), "", "false"}));
+            measure("Appointment", n, k -> AppointmentRepo.parse(new String[]{"AP-"+k, "C"+(k%500), "", "S"+(k%4),
+                    "2025-11-01T09:00", "2025-11-01T09:30", new String(k%3==0? "BOOKED" : "DONE"), "0"}));
+            measure("Sale", n, k -> SaleRepo.parse(new String[]{"R-"+k, "2025-11-0"+(1+k%9)+"T10:15:30", "C"+(k%500), "20.0", "1.4", "21.4", "21.4", "0",
+                    "ITEM|I-"+(k%300)+"|Item "+(k%300)+"|2|10.0|true|20.0;ANIMAL|A-"+k+"|"+species(k)+" ("+breed(k)+")|1|15.0|false|15.0"}));
+            System.out.println("dictionary entries: "+Dict.size());
+        }
+
+        static void measure(String model, int n, java.util.function.IntFunction<Object> make){
+            long[] perRec = new long[2];
+            for (int pass=0; pass<2; pass++){
+                Dict.enabled = pass==1;
+                long before = used();
+                Object[] keep = new Object[n];
+                for (int k=0;k<n;k++) keep[k] = make.apply(k);
+                long after = used();
+                perRec[pass] = (after-before)/n;
+                java.lang.ref.Reference.reachabilityFence(keep);  // keep the array reachable until measured
+            }
+            Dict.enabled = true;
+            System.out.printf("%-14s %14d %14d %8.0f%%%n", model, perRec[0], perRec[1], 100.0*(perRec[0]-perRec[1])/Math.max(1, perRec[0]));
+        }
+
+        static String species(int k){ return new String(new String[]{"Chicken","Rabbit","Duck","Goat"}[k%4]); }
+        static String breed(int k){ return new String(new String[]{"Silkie","Mini Rex","Pekin","Nigerian Dwarf","Orpington"}[k%5]); }
+
+        static long used(){
+            Runtime rt = Runtime.getRuntime();
+            for (int k=0;k<3;k++){ System.gc(); try { Thread.sleep(50); } catch (InterruptedException ignored) {} }
+            return rt.totalMemory()-rt.freeMemory();
+        }
+    }
+
+    // ===================== Multi-store Sync =====================
+    // Each store appends every inventory/animal/sale change (and the ledger rows moved at
+    // End Day) to data/changelog.csv with an increasing sequence number:
+    //   seq,entity,op,id,<entity row columns...>
+    // The header carries a log id (seq,entity,op,id,row,log=<id>); a new log gets a new id
+    // and opens with a snapshot of current inventory and animals, so head office can tell a
+    // reset log from the old one. Head office pulls only the bytes after its last checkpoint.
+
+    static class ChangeLog {
+        static final String FILE = "changelog.csv";
+        static final String HEADER = "seq,entity,op,id,row";
+        private static long seq;
+        private static Writer out;
+
+        // opens the log for appending and starts recording repo changes; a log whose last
+        // entry can't be read is an error, never a silent restart at seq 0
+        static void attach() throws IOException {
+            lockDb();
+            try { synchronized (ChangeLog.class){
+                if (out!=null) return;
+                Path p = CsvFiles.p(FILE);
+                boolean fresh = !Files.exists(p) || Files.size(p)==0;
+                if (fresh) Files.writeString(p, HEADER+",log="+Long.toString(System.currentTimeMillis(), 36)+"\n");
+                seq = fresh? 0 : lastSeq(p);
+                out = Files.newBufferedWriter(p, StandardOpenOption.APPEND);
+                if (!endsWithNewline(p)) out.write('\n');   // closes off a line cut short by a crash
+                InventoryRepo.changes.subscribe(c -> append("INVENTORY", c.kind, c.id, c.row==null? new String[0] : InventoryRepo.row(c.row)));
+                AnimalRepo.changes.subscribe(c -> append("ANIMAL", c.kind, c.id, c.row==null? new String[0] : AnimalRepo.row(c.row)));
+                SaleRepo.changes.subscribe(c -> append("SALE", c.kind, c.id, c.row==null? new String[0] : SaleRepo.row(c.row)));
+                if (fresh){
+                    for (InventoryItem it : InventoryRepo.all()) append("INVENTORY", ChangeKind.INSERT, it.id, InventoryRepo.row(it));
+                    for (Animal a : AnimalRepo.all()) append("ANIMAL", ChangeKind.INSERT, a.id, AnimalRepo.row(a));
+                }
+            }} finally { DB_LOCK.unlock(); }
+        }
+
+        static synchronized void append(String entity, ChangeKind op, String id, String[] row){
+            if (out==null) return;
+            try {
+                StringBuilder sb = new StringBuilder();
+                sb.append(++seq).append(',').append(entity).append(',').append(op).append(',').append(CsvFiles.sq(id));
+                for (String f : CsvFiles.safe(row)) sb.append(',').append(f);
+                out.write(sb.append('\n').toString());
+                out.flush();
+            } catch (IOException e) { e.printStackTrace(); }
+        }
+
+        // sequence number of the last complete line, read from the tail of the file
+        static long lastSeq(Path p) throws IOException {
+            if (!Files.exists(p)) return 0;
+            try (RandomAccessFile raf = new RandomAccessFile(p.toFile(), "r")) {
+                long end = raf.length();
+                for (int window = 4096; ; window *= 2){
+                    long from = Math.max(0, end-window);
+                    byte[] buf = new byte[(int)(end-from)];
+                    raf.seek(from); raf.readFully(buf);
+                    String tail = new String(buf, java.nio.charset.StandardCharsets.UTF_8);
+                    String[] lines = tail.split("\n");
+                    int last = lines.length-1;
+                    if (buf.length>0 && buf[buf.length-1]!='\n') last--;   // unterminated: not complete
+                    for (int k=last; k>=(from==0? 0 : 1); k--){
+                        String ln = lines[k].trim();
+                        if (ln.isEmpty()) continue;
+                        if (ln.startsWith("seq,")) return 0;
+                        int comma = ln.indexOf(',');
+                        try { return Long.parseLong(comma<0? ln : ln.substring(0, comma)); }
+                        catch (NumberFormatException e){ throw new IOException(p+": last entry has no sequence number: "+ln); }
+                    }
+                    if (from==0) return 0;
+                }
+            }
+        }
+
+        static boolean endsWithNewline(Path p) throws IOException {
+            try (RandomAccessFile raf = new RandomAccessFile(p.toFile(), "r")) {
+                if (raf.length()==0) return true;
+                raf.seek(raf.length()-1);
+                return raf.read()=='\n';
+            }
+        }
+
+        // the log=<id> from a changelog header, "" for logs written before ids existed
+        static String logId(Path p) throws IOException {
+            String head;
+            try (BufferedReader r = Files.newBufferedReader(p)) { head = r.readLine(); }
+            int at = head==null? -1 : head.indexOf("log=");
+            return at<0? "" : head.substring(at+4).trim();
+        }
+    }
+
+    // Central aggregator: pulls each store's changelog delta into <central>/<entity>.csv
+    // journals (storeId,seq,op,id,row...). Checkpoints (storeId,log,seq,byteOffset,base)
+    // are only advanced after the journals are written; replays are harmless because
+    // readers fold journals by (storeId,id) and skip (storeId,seq) pairs already seen.
+    // Journal seq is base+store seq: when a store starts a new log (new log id, seq from 1)
+    // base moves past everything already journaled, so new entries never collide with old.
+    //   java FarmStoreManager --sync <centralDir> <storeId>=<storeDataDir> ...
+    //   java FarmStoreManager --sync-report <centralDir>
+    static class StoreSync {
+        static final Map<String,String> JOURNALS = Map.of(
+                "INVENTORY", "inventory.csv", "ANIMAL", "animals.csv", "SALE", "sales.csv", "LEDGER", "lifetime_transactions.csv");
+
+        public static void main(String[] args){
+            if (args.length<2){ System.out.println("usage: --sync <centralDir> <storeId>=<storeDataDir> ..."); return; }
+            Path central = Path.of(args[0]);
+            for (int k=1;k<args.length;k++){
+                String[] kv = args[k].split("=", 2);
+                if (kv.length<2){ System.out.println("skipping "+args[k]+" (expected storeId=dir)"); continue; }
+                try {
+                    long t0 = System.nanoTime();
+                    int n = pull(central, kv[0], Path.of(kv[1]));
+                    System.out.printf("%s: %d changes in %.1f ms%n", kv[0], n, (System.nanoTime()-t0)/1e6);
+                } catch (IOException | UncheckedIOException e) {
+                    System.out.println(kv[0]+": sync failed: "+e.getMessage());
+                }
+            }
+        }
+
+        static synchronized int pull(Path central, String storeId, Path storeDir) throws IOException {
+            Files.createDirectories(central);
+            Path log = storeDir.resolve(ChangeLog.FILE);
+            if (!Files.exists(log)) return 0;
+
+            Map<String,Checkpoint> cps = checkpoints(central);
+            Checkpoint cp = cps.computeIfAbsent(storeId, k -> new Checkpoint());
+            String logId = ChangeLog.logId(log);
+            long size = Files.size(log);
+            if (!logId.equals(cp.log)){                    // store started a new log: read it all
+                cp.base += cp.seq; cp.seq = 0; cp.offset = 0; cp.log = logId;
+            } else if (cp.offset > size){
+                throw new IOException(log+" is shorter than the last pull but has the same log id "+logId);
+            }
+            long offset = cp.offset;
+            if (offset==size){ saveCheckpoints(central, cps); return 0; }
+
+            byte[] delta;
+            try (RandomAccessFile raf = new RandomAccessFile(log.toFile(), "r")) {
+                delta = new byte[(int)(size-offset)];
+                raf.seek(offset); raf.readFully(delta);
+            }
+
+            Map<String,List<String>> byJournal = new HashMap<>();
+            long lastSeq = cp.seq; int applied = 0, pos = 0;
+            for (int k=0;k<delta.length;k++){
+                if (delta[k]!='\n') continue;                // a trailing partial line waits for the next pull
+                String line = new String(delta, pos, k-pos, java.nio.charset.StandardCharsets.UTF_8).trim();
+                pos = k+1;
+                if (line.isEmpty() || line.startsWith("seq,")) continue;
+                int comma = line.indexOf(',');
+                long seq;
+                try { seq = Long.parseLong(line.substring(0, comma)); } catch (Exception e){ continue; }
+                if (seq<=lastSeq) continue;
+                String entity = line.substring(comma+1, line.indexOf(',', comma+1));
+                String journal = JOURNALS.get(entity);
+                if (journal==null) continue;
+                byJournal.computeIfAbsent(journal, j -> new ArrayList<>()).add(CsvFiles.sq(storeId)+","+(cp.base+seq)+line.substring(comma));
+                lastSeq = seq; applied++;
+            }
+
+            for (Map.Entry<String,List<String>> e : byJournal.entrySet()){
+                Path j = central.resolve(e.getKey());
+                boolean fresh = !Files.exists(j);
+                try (BufferedWriter w = Files.newBufferedWriter(j, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                    if (fresh) w.write("storeId,seq,entity,op,id,row\n");
+                    for (String ln : e.getValue()){ w.write(ln); w.write('\n'); }
+                }
+            }
+            cp.seq = lastSeq; cp.offset = offset+pos;
+            saveCheckpoints(central, cps);
+            return applied;
+        }
+
+        // merged head-office view: sales count/revenue and live SKUs per store
+        static void report(Path central){
+            Map<String,double[]> stores = new TreeMap<>();
+            for (Map.Entry<String,String[]> e : current(central, "sales.csv").entrySet()){
+                double[] t = stores.computeIfAbsent(e.getKey().substring(0, e.getKey().indexOf('#')), k -> new double[3]);
+                t[0]++; if (e.getValue().length>5) t[1] += d(e.getValue()[5]);
+            }
+            for (String key : current(central, "inventory.csv").keySet())
+                stores.computeIfAbsent(key.substring(0, key.indexOf('#')), k -> new double[3])[2]++;
+            System.out.printf("%-12s %8s %14s %8s%n", "store", "sales", "revenue", "SKUs");
+            for (Map.Entry<String,double[]> e : stores.entrySet())
+                System.out.printf("%-12s %8d %14s %8d%n", e.getKey(), (long)e.getValue()[0], money(e.getValue()[1]), (long)e.getValue()[2]);
+        }
+
+        // current state of one journal: latest row per (storeId,id), deletes removed
+        static Map<String,String[]> current(Path central, String journal){
+            Map<String,String[]> state = new LinkedHashMap<>();
+            Set<String> seen = new HashSet<>();
+            for (String[] r : CsvFiles.read(central.resolve(journal))){
+                if (r.length<5 || !seen.add(r[0]+"#"+r[1])) continue;
+                String key = r[0]+"#"+r[4];
+                if (r[3].equals("DELETE")) state.remove(key);
+                else state.put(key, Arrays.copyOfRange(r, 5, r.length));
+            }
+            return state;
+        }
+
+        static class Checkpoint {
+            String log = ""; long seq, offset, base;
+        }
+
+        static Map<String,Checkpoint> checkpoints(Path central) throws IOException {
+            Map<String,Checkpoint> m = new HashMap<>();
+            for (String[] r : CsvFiles.read(central.resolve("checkpoints.csv"))){
+                Checkpoint cp = new Checkpoint();
+                try {
+                    if (r.length>=5){ cp.log = r[1].trim(); cp.seq = Long.parseLong(r[2].trim()); cp.offset = Long.parseLong(r[3].trim()); cp.base = Long.parseLong(r[4].trim()); }
+                    else if (r.length>=3){ cp.seq = Long.parseLong(r[1].trim()); cp.offset = Long.parseLong(r[2].trim()); }   // pre log-id format
+                    else continue;
+                } catch (NumberFormatException e){ throw new IOException("checkpoints.csv: bad row for "+r[0]); }
+                m.put(r[0], cp);
+            }
+            return m;
+        }
+
+        static void saveCheckpoints(Path central, Map<String,Checkpoint> cps) throws IOException {
+            List<String[]> rows = new ArrayList<>();
+            for (Map.Entry<String,Checkpoint> e : new TreeMap<>(cps).entrySet()){
+                Checkpoint cp = e.getValue();
+                rows.add(new String[]{e.getKey(), cp.log, Long.toString(cp.seq), Long.toString(cp.offset), Long.toString(cp.base)});
+            }
+            Path tmp = central.resolve("checkpoints.csv.tmp");
+            CsvFiles.write(tmp, "storeId,log,seq,offset,base", rows);
+            Files.move(tmp, central.resolve("checkpoints.csv"), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    // ===================== Register HTTP API =====================
+    // JSON over the JDK HTTP server, sharing StoreOps/repos with the GUI.
+    //   GET  /inventory[?sku=X]                       item(s)
+    //   POST /checkout     {"customerId","payment":"cash|card","lines":[{"sku","qty"} | {"animalId"} | {"appointmentId","price"}]}
+    //   POST /appointments {"customerId","serviceId","start":"2025-11-30T13:00:00"}
+    //   POST /animals/sell {"animalId","customerId"}
+    //   POST /day/close                               End Day: daily ledger -> lifetime_transactions.csv
+    // Standalone: java FarmStoreManager --api [port|host:port]   (in the GUI: -Dfarmstore.apiPort=8080)
+    // A standalone server also closes the day when it shuts down, so no ledger rows are lost.
+    // Binds 127.0.0.1 unless told otherwise (host:port or -Dfarmstore.apiHost). Tablets and
+    // barcode stations on the store network need a LAN address such as 0.0.0.0; since the API
+    // has no user accounts, any non-loopback bind requires a shared token
+    // (-Dfarmstore.apiToken or FARMSTORE_API_TOKEN), sent as "Authorization: Bearer <token>".
+
+    // minimal JSON reader/writer: objects, arrays, strings, numbers (as Double), booleans, null
+    static class Json {
+        final String s; int pos;
+        Json(String s){ this.s=s; }
+
+        static Object parse(String s){
+            Json j = new Json(s);
+            Object v = j.value(); j.ws();
+            if (j.pos<s.length()) throw j.error();
+            return v;
+        }
+
+        Object value(){
+            ws();
+            if (pos>=s.length()) throw error();
+            char c = s.charAt(pos);
+            if (c=='{'){
+                Map<String,Object> m = new LinkedHashMap<>(); pos++; ws();
+                if (peek('}')) return m;
+                do { ws(); String k = string(); ws(); expect(':'); m.put(k, value()); ws(); } while (peek(','));
+                expect('}'); return m;
+            }
+            if (c=='['){
+                List<Object> l = new ArrayList<>(); pos++; ws();
+                if (peek(']')) return l;
+                do { l.add(value()); ws(); } while (peek(','));
+                expect(']'); return l;
+            }
+            if (c=='"') return string();
+            if (s.startsWith("true", pos)){ pos+=4; return Boolean.TRUE; }
+            if (s.startsWith("false", pos)){ pos+=5; return Boolean.FALSE; }
+            if (s.startsWith("null", pos)){ pos+=4; return null; }
+            int start = pos;
+            while (pos<s.length() && "+-.eE0123456789".indexOf(s.charAt(pos))>=0) pos++;
+            try { return Double.parseDouble(s.substring(start, pos)); } catch (NumberFormatException e){ throw error(); }
+        }
+
+        String string(){
+            expect('"');
+            StringBuilder sb = new StringBuilder();
+            while (pos<s.length()){
+                char c = s.charAt(pos++);
+                if (c=='"') return sb.toString();
+                if (c!='\\'){ sb.append(c); continue; }
+                if (pos>=s.length()) break;
+                char e = s.charAt(pos++);
+                switch (e){
+                    case 'n': sb.append('\n'); break;
+                    case 't': sb.append('\t'); break;
+                    case 'r': sb.append('\r'); break;
+                    case 'b': sb.append('\b'); break;
+                    case 'f': sb.append('\f'); break;
+                    case 'u':
+                        if (pos+4>s.length()) throw error();
+                        sb.append((char) Integer.parseInt(s.substring(pos, pos+4), 16)); pos+=4; break;
+                    default: sb.append(e);
+                }
+            }
+            throw error();
+        }
+
+        void ws(){ while (pos<s.length() && Character.isWhitespace(s.charAt(pos))) pos++; }
+        boolean peek(char c){ if (pos<s.length() && s.charAt(pos)==c){ pos++; return true; } return false; }
+        void expect(char c){ if (!peek(c)) throw error(); }
+        IllegalArgumentException error(){ return new IllegalArgumentException("bad JSON at "+pos); }
+
+        static String write(Object o){ StringBuilder sb = new StringBuilder(); write(o, sb); return sb.toString(); }
+
+        static void write(Object o, StringBuilder sb){
+            if (o==null) sb.append("null");
+            else if (o instanceof Map){
+                sb.append('{'); boolean first = true;
+                for (Map.Entry<?,?> e : ((Map<?,?>) o).entrySet()){
+                    if (!first) sb.append(','); first = false;
+                    write(String.valueOf(e.getKey()), sb); sb.append(':'); write(e.getValue(), sb);
+                }
+                sb.append('}');
+            }
+            else if (o instanceof Collection){
+                sb.append('['); boolean first = true;
+                for (Object v : (Collection<?>) o){ if (!first) sb.append(','); first = false; write(v, sb); }
+                sb.append(']');
+            }
+            else if (o instanceof Number || o instanceof Boolean) sb.append(o);
+            else {
+                sb.append('"');
+                for (char c : o.toString().toCharArray()){
+                    if (c=='"' || c=='\\') sb.append('\\').append(c);
+                    else if (c<0x20) sb.append(String.format("\\u%04x", (int) c));
+                    else sb.append(c);
+                }
+                sb.append('"');
+            }
+        }
+    }
+
+    static class CheckoutApi {
+        static class ApiError extends RuntimeException {
+            final int status;
+            ApiError(int status, String msg){ super(msg); this.status=status; }
+        }
+
+        interface Handler { Object handle(String method, Map<String,String> query, Map<String,Object> body); }
+
+        public static void main(String[] args){
+            CsvFiles.ensureAllWithSeed();
+            LifetimeTransactionRepo.loadIntoLists();
+            try {
+                ChangeLog.attach();
+                StockVelocity.tracker(); // subscribes before the first sale so rates move and closeDay saves them
+                String host = System.getProperty("farmstore.apiHost", "127.0.0.1"), port = args.length>0? args[0] : "8080";
+                int colon = port.lastIndexOf(':');
+                if (colon>=0){ host = port.substring(0, colon); port = port.substring(colon+1); }
+                HttpServer server = start(host, i(port), token());
+                Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                    server.stop(1);
+                    int moved = StoreOps.closeDay();
+                    System.out.println("Register API stopped; "+moved+" ledger row(s) saved");
+                }));
+                System.out.println("Register API on http://"+host+":"+server.getAddress().getPort()+" (data: "+DATA_DIR+")");
+            } catch (IOException e) { System.out.println("Register API not started: "+e.getMessage()); }
+        }
+
+        static String token(){
+            String t = System.getProperty("farmstore.apiToken");
+            return n(t!=null? t : System.getenv("FARMSTORE_API_TOKEN"));
+        }
+
+        // host/token from -Dfarmstore.apiHost / apiToken (GUI-embedded server)
+        static HttpServer start(int port) throws IOException {
+            return start(System.getProperty("farmstore.apiHost", "127.0.0.1"), port, token());
+        }
+
+        // token may be null only for a loopback bind; when set, every request must carry it
+        static HttpServer start(String host, int port, String token) throws IOException {
+            InetAddress addr = InetAddress.getByName(host);
+            if (token==null && !addr.isLoopbackAddress())
+                throw new IOException("binding "+host+" exposes the API to the network; set -Dfarmstore.apiToken (or FARMSTORE_API_TOKEN) first");
+            byte[] secret = token==null? null : ("Bearer "+token).getBytes(java.nio.charset.StandardCharsets.UTF_8);
+            HttpServer server = HttpServer.create(new InetSocketAddress(addr, port), 256);
+            server.createContext("/inventory", ex -> serve(ex, secret, CheckoutApi::inventory));
+            server.createContext("/checkout", ex -> serve(ex, secret, CheckoutApi::checkout));
+            server.createContext("/appointments", ex -> serve(ex, secret, CheckoutApi::book));
+            server.createContext("/animals/sell", ex -> serve(ex, secret, CheckoutApi::sellAnimal));
+            server.createContext("/day/close", ex -> serve(ex, secret, CheckoutApi::closeDay));
+            server.setExecutor(executor());
+            server.start();
+            return server;
+        }
+
+        // virtual thread per request when the JDK has them (21+), otherwise a cached pool
+        static ExecutorService executor(){
+            try { return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null); }
+            catch (ReflectiveOperationException e){ return Executors.newCachedThreadPool(); }
+        }
+
+        @SuppressWarnings("unchecked")
+        static void serve(HttpExchange ex, byte[] secret, Handler h) throws IOException {
+            int status = 200; Object out;
+            try {
+                if (secret!=null){
+                    String auth = ex.getRequestHeaders().getFirst("Authorization");
+                    if (auth==null || !java.security.MessageDigest.isEqual(secret, auth.trim().getBytes(java.nio.charset.StandardCharsets.UTF_8)))
+                        throw new ApiError(401, "missing or wrong API token");
+                }
+                Map<String,Object> body = Map.of();
+                if (ex.getRequestMethod().equals("POST")){
+                    String text = new String(ex.getRequestBody().readAllBytes(), java.nio.charset.StandardCharsets.UTF_8);
+                    Object parsed = text.isBlank()? Map.of() : Json.parse(text);
+                    if (!(parsed instanceof Map)) throw new ApiError(400, "body must be a JSON object");
+                    body = (Map<String,Object>) parsed;
+                }
+                out = h.handle(ex.getRequestMethod(), query(ex.getRequestURI().getRawQuery()), body);
+            } catch (ApiError e){
+                status = e.status; out = Map.of("error", e.getMessage());
+            } catch (IllegalArgumentException e){
+                status = 400; out = Map.of("error", String.valueOf(e.getMessage()));
+            } catch (IllegalStateException e){
+                status = 409; out = Map.of("error", String.valueOf(e.getMessage()));
+            } catch (UncheckedIOException e){
+                status = 500; out = Map.of("error", "could not save: "+e.getCause().getMessage());
+            } catch (RuntimeException e){
+                e.printStackTrace();
+                status = 500; out = Map.of("error", "internal error");
+            }
+            byte[] bytes = Json.write(out).getBytes(java.nio.charset.StandardCharsets.UTF_8);
+            ex.getResponseHeaders().set("Content-Type", "application/json");
+            ex.sendResponseHeaders(status, bytes.length);
+            try (OutputStream os = ex.getResponseBody()) { os.write(bytes); }
+        }
+
+        static Map<String,String> query(String raw){
+            Map<String,String> q = new HashMap<>();
+            if (raw==null) return q;
+            for (String kv : raw.split("&")){
+                String[] p = kv.split("=", 2);
+                q.put(java.net.URLDecoder.decode(p[0], java.nio.charset.StandardCharsets.UTF_8),
+                      p.length>1? java.net.URLDecoder.decode(p[1], java.nio.charset.StandardCharsets.UTF_8) : "");
+            }
+            return q;
+        }
+
+        static Object inventory(String method, Map<String,String> q, Map<String,Object> body){
+            requireMethod(method, "GET");
+            String sku = q.get("sku");
+            if (sku!=null) return json(InventoryRepo.bySku(sku).orElseThrow(() -> new ApiError(404, "unknown sku "+sku)));
+            List<Object> out = new ArrayList<>();
+            for (InventoryItem it : InventoryRepo.all()) out.add(json(it));
+            return out;
+        }
+
+        static Object checkout(String method, Map<String,String> q, Map<String,Object> body){
+            requireMethod(method, "POST");
+            Cart cart = new Cart().customer(customer(body));
+            if (!(body.get("lines") instanceof List) || ((List<?>) body.get("lines")).isEmpty()) throw new ApiError(400, "lines required");
+            Map<String,InventoryItem> bySku = null;
+            for (Object o : (List<?>) body.get("lines")){
+                if (!(o instanceof Map)) throw new ApiError(400, "each line must be an object");
+                Map<?,?> line = (Map<?,?>) o;
+                if (line.get("sku")!=null){
+                    if (bySku==null){
+                        bySku = new HashMap<>();
+                        for (InventoryItem it : InventoryRepo.all()) bySku.put(it.sku.toLowerCase(), it);
+                    }
+                    String sku = line.get("sku").toString();
+                    InventoryItem it = bySku.get(sku.toLowerCase());
+                    if (it==null) throw new ApiError(404, "unknown sku "+sku);
+                    int qty = line.get("qty")==null? 1 : wholeNumber(line.get("qty"), "qty");
+                    if (qty<=0) throw new ApiError(400, "qty must be positive");
+                    cart.addItem(it, qty);
+                } else if (line.get("animalId")!=null){
+                    cart.addAnimal(animal(line.get("animalId").toString()));
+                } else if (line.get("appointmentId")!=null){
+                    String id = line.get("appointmentId").toString();
+                    Appointment ap = AppointmentRepo.all().stream().filter(a -> a.id.equals(id)).findFirst()
+                            .orElseThrow(() -> new ApiError(404, "unknown appointment "+id));
+                    Service svc = ServiceRepo.byId(ap.serviceId).orElseThrow(() -> new ApiError(404, "unknown service "+ap.serviceId));
+                    if (line.get("price")!=null && !(line.get("price") instanceof Number)) throw new ApiError(400, "price must be a number");
+                    double price = line.get("price")==null? svc.basePrice : ((Number) line.get("price")).doubleValue();
+                    if (price<0 || Double.isNaN(price) || Double.isInfinite(price)) throw new ApiError(400, "price must not be negative");
+                    cart.addAppointment(ap, svc, price);
+                } else throw new ApiError(400, "line needs sku, animalId or appointmentId");
+            }
+            return receipt(StoreOps.checkout(cart, payment(body)));
+        }
+
+        static Object closeDay(String method, Map<String,String> q, Map<String,Object> body){
+            requireMethod(method, "POST");
+            return Map.of("ledgerRowsSaved", StoreOps.closeDay());
+        }
+
+        static Object book(String method, Map<String,String> q, Map<String,Object> body){
+            requireMethod(method, "POST");
+            String custId = customer(body);
+            if (custId==null) throw new ApiError(400, "customerId required");
+            if (body.get("serviceId")==null || body.get("serviceId").toString().isBlank()) throw new ApiError(400, "serviceId required");
+            String svcId = body.get("serviceId").toString();
+            Service svc = ServiceRepo.byId(svcId).orElseThrow(() -> new ApiError(404, "unknown service "+svcId));
+            LocalDateTime when;
+            try { when = LocalDateTime.parse(String.valueOf(body.get("start")), format); }
+            catch (DateTimeParseException e){ throw new ApiError(400, "start must look like 2025-11-30T13:00:00"); }
+            Appointment ap = StoreOps.book(custId, svc, when);
+            if (ap==null) throw new ApiError(409, "Time overlaps existing appointment.");
+            Map<String,Object> out = new LinkedHashMap<>();
+            out.put("id", ap.id); out.put("start", ap.start.toString()); out.put("end", ap.end.toString()); out.put("status", ap.status);
+            return out;
+        }
+
+        static Object sellAnimal(String method, Map<String,String> q, Map<String,Object> body){
+            requireMethod(method, "POST");
+            if (body.get("animalId")==null) throw new ApiError(400, "animalId required");
+            return receipt(StoreOps.sellAnimal(animal(body.get("animalId").toString()), customer(body)));
+        }
+
+        static void requireMethod(String method, String expected){
+            if (!method.equals(expected)) throw new ApiError(405, "use "+expected);
+        }
 
-            List<Sale> sales = SaleRepo.all();
-            sales.add(sale);
-            SaleRepo.saveAll(sales);
+        // true for cash, false for card; anything else is rejected rather than guessed
+        static boolean payment(Map<String,Object> body){
+            String p = body.get("payment") instanceof String? ((String) body.get("payment")).trim() : "";
+            if (p.equalsIgnoreCase("cash")) return true;
+            if (p.equalsIgnoreCase("card")) return false;
+            throw new ApiError(400, "payment must be \"cash\" or \"card\"");
+        }
+
+        static int wholeNumber(Object v, String field){
+            if (!(v instanceof Number)) throw new ApiError(400, field+" must be a number");
+            double d = ((Number) v).doubleValue();
+            if (d!=Math.rint(d) || Math.abs(d)>Integer.MAX_VALUE) throw new ApiError(400, field+" must be a whole number");
+            return (int) d;
+        }
+
+        static String customer(Map<String,Object> body){
+            Object id = body.get("customerId");
+            if (id==null || id.toString().isBlank()) return null;
+            if (CustomerRepo.byId(id.toString()).isEmpty()) throw new ApiError(404, "unknown customer "+id);
+            return id.toString();
+        }
+
+        static Animal animal(String id){
+            for (Animal a : AnimalRepo.all()) if (a.id.equals(id)) return a;
+            throw new ApiError(404, "unknown animal "+id);
+        }
+
+        static Map<String,Object> json(InventoryItem it){
+            Map<String,Object> m = new LinkedHashMap<>();
+            m.put("id", it.id); m.put("sku", it.sku); m.put("name", it.name); m.put("category", it.category);
+            m.put("unitPrice", it.unitPrice); m.put("qtyOnHand", it.qtyOnHand); m.put("taxable", it.taxable);
+            return m;
+        }
+
+        static Map<String,Object> receipt(Sale s){
+            Map<String,Object> m = new LinkedHashMap<>();
+            m.put("receiptId", s.id); m.put("customerId", s.customerId);
+            List<Object> lines = new ArrayList<>();
+            for (SaleLine l : s.lines){
+                Map<String,Object> lm = new LinkedHashMap<>();
+                lm.put("type", l.itemType); lm.put("refId", l.refId); lm.put("description", l.description);
+                lm.put("qty", l.qty); lm.put("unitPrice", l.unitPrice); lm.put("lineTotal", l.lineTotal);
+                lines.add(lm);
+            }
+            m.put("lines", lines);
+            m.put("subTotal", s.subTotal); m.put("tax", s.tax); m.put("total", s.total);
+            return m;
+        }
+    }
+
+    // Localhost load test for the register API: starts a server on a temp data dir seeded
+    // like LoadSim, then fires lookups (80%) and 1-3 line checkouts (20%) from many clients.
+    //   java FarmStoreManager --api-load [requests] [concurrency]
+    static class ApiLoad {
+        public static void main(String[] args){
+            int total = args.length>0? i(args[0]) : 5000;
+            int conc = args.length>1? i(args[1]) : 64;
+            try {
+                DATA_DIR = Files.createTempDirectory("farmapi").toString();
+                new LoadSim(1).setup();
+                HttpServer server = CheckoutApi.start("127.0.0.1", 0, null);
+                String base = "http://localhost:"+server.getAddress().getPort();
+                List<String> skus = new ArrayList<>();
+                for (InventoryItem it : InventoryRepo.all()) skus.add(it.sku);
+
+                HttpClient client = HttpClient.newBuilder().executor(Executors.newFixedThreadPool(conc)).build();
+                long[] lat = new long[total];
+                int[] status = new int[total];
+                java.util.concurrent.atomic.AtomicInteger next = new java.util.concurrent.atomic.AtomicInteger();
+                ExecutorService clients = Executors.newFixedThreadPool(conc);
+                long t0 = System.nanoTime();
+                for (int c=0;c<conc;c++) clients.submit(() -> {
+                    Random rnd = new Random();
+                    for (int k; (k = next.getAndIncrement()) < total; ){
+                        HttpRequest req;
+                        if (rnd.nextInt(100)<80){
+                            req = HttpRequest.newBuilder(URI.create(base+"/inventory?sku="+skus.get(rnd.nextInt(skus.size())))).GET().build();
+                        } else {
+                            StringBuilder lines = new StringBuilder();
+                            for (int l=0, n=1+rnd.nextInt(3); l<n; l++)
+                                lines.append(l>0? "," : "").append("{\"sku\":\"").append(skus.get(rnd.nextInt(skus.size()))).append("\",\"qty\":1}");
+                            req = HttpRequest.newBuilder(URI.create(base+"/checkout"))
+                                    .POST(HttpRequest.BodyPublishers.ofString("{\"payment\":\"card\",\"lines\":["+lines+"]}")).build();
+                        }
+                        long t = System.nanoTime();
+                        try { status[k] = client.send(req, HttpResponse.BodyHandlers.ofString()).statusCode(); }
+                        catch (Exception e){ status[k] = -1; }
+                        lat[k] = System.nanoTime()-t;
+                    }
+                    return null;
+                });
+                clients.shutdown();
+                clients.awaitTermination(1, java.util.concurrent.TimeUnit.HOURS);
+                long wall = System.nanoTime()-t0;
+                server.stop(0);
+
+                Map<Integer,Integer> codes = new TreeMap<>();
+                for (int st : status) codes.merge(st, 1, Integer::sum);
+                List<Long> sorted = new ArrayList<>();
+                for (long l : lat) sorted.add(l);
+                Collections.sort(sorted);
+                System.out.printf("%d requests, %d clients, %.2fs = %.0f req/s%n", total, conc, wall/1e9, total/(wall/1e9));
+                System.out.printf("p50 %.2f ms  p99 %.2f ms  max %.2f ms  status %s%n",
+                        LoadSim.pct(sorted,50)/1e6, LoadSim.pct(sorted,99)/1e6, sorted.get(sorted.size()-1)/1e6, codes);
+                System.exit(0);
+            } catch (IOException | InterruptedException e) { e.printStackTrace(); }
+        }
+    }
+
+    // ===================== Panels =====================
+
+    // "" = walk-in, null = cancelled
+    // runs a button action that saves to the CSVs; a failed save is shown to the clerk
+    // (no event was published, so tables still match the files) instead of dying on the EDT
+    static void saving(java.awt.Component parent, Runnable action){
+        try { action.run(); }
+        catch (UncheckedIOException e) { JOptionPane.showMessageDialog(parent, "Could not save: "+e.getCause().getMessage()); }
+        catch (IllegalStateException e) { JOptionPane.showMessageDialog(parent, e.getMessage()); } // e.g. a sale's files still pending
+    }
+
+    static String askCustomer(java.awt.Component parent){
+        while (true){
+            String id = JOptionPane.showInputDialog(parent,"Customer ID (leave blank for walk-in):");
+            if (id==null) return null;
+            id = id.trim();
+            if (id.isEmpty() || CustomerRepo.byId(id).isPresent()) return id;
+            JOptionPane.showMessageDialog(parent,"Unknown customer "+id);
+        }
+    }
+
+    // Table model keyed by row id; applies repository change events as single-row
+    // inserts/updates/deletes rather than rebuilding the whole table.
+    static class RowTableModel<T> extends AbstractTableModel {
+        final String[] columns;
+        final Function<T,String> idOf;
+        final Function<T,Object[]> cellsOf;
+        final List<T> rows = new ArrayList<>();
+        final List<Object[]> cells = new ArrayList<>();
+        final Map<String,Integer> index = new HashMap<>();
+
+        RowTableModel(String[] columns, Function<T,String> idOf, Function<T,Object[]> cellsOf){
+            this.columns=columns; this.idOf=idOf; this.cellsOf=cellsOf;
+        }
+
+        public int getRowCount(){ return rows.size(); }
+        public int getColumnCount(){ return columns.length; }
+        public String getColumnName(int c){ return columns[c]; }
+        public Object getValueAt(int r,int c){ return cells.get(r)[c]; }
+
+        T rowAt(int r){ return (r<0 || r>=rows.size())? null : rows.get(r); }
+
+        void load(List<T> all){
+            rows.clear(); cells.clear(); index.clear();
+            for (T t : all) append(t);
+            fireTableDataChanged();
+        }
+
+        void apply(Change<T> c){
+            if (!SwingUtilities.isEventDispatchThread()){ SwingUtilities.invokeLater(() -> apply(c)); return; }
+            Integer at = index.get(c.id);
+            if (c.kind==ChangeKind.DELETE){
+                if (at==null) return;
+                rows.remove((int)at); cells.remove((int)at); index.remove(c.id);
+                for (int r=at;r<rows.size();r++) index.put(idOf.apply(rows.get(r)), r);
+                fireTableRowsDeleted(at, at);
+            } else if (at==null){
+                append(c.row);
+                fireTableRowsInserted(rows.size()-1, rows.size()-1);
+            } else {
+                rows.set(at, c.row); cells.set(at, cellsOf.apply(c.row));
+                fireTableRowsUpdated(at, at);
+            }
+        }
+
+        private void append(T t){
+            index.put(idOf.apply(t), rows.size());
+            rows.add(t); cells.add(cellsOf.apply(t));
+        }
+    }
+
+    // ---- Store (Inventory & Item Sales) ----
+    class StorePanel extends JPanel {
+        JLabel lowStock = new JLabel(" ");
+        RowTableModel<InventoryItem> model = new RowTableModel<>(new String[]{"SKU","Name","Category","Price","Qty","Taxable"},
+                it -> it.id, it -> new Object[]{it.sku,it.name,it.category,money(it.unitPrice),it.qtyOnHand,it.taxable});
+        JTable table = new JTable(model);
+
+        StorePanel(){
+            setLayout(new BorderLayout());
+            add(new JScrollPane(table), BorderLayout.CENTER);
+
+            JPanel actions = new JPanel(new FlowLayout(FlowLayout.LEFT));
+            JButton add = new JButton("Add Item");
+            JButton edit = new JButton("Edit");
+            JButton del = new JButton("Delete");
+            JButton sell = new JButton("New Sale");
+            JButton imp = new JButton("Import Price List");
+            JButton reorder = new JButton("Reorder List");
+            actions.add(add); actions.add(edit); actions.add(del); actions.add(sell); actions.add(imp); actions.add(reorder);
+            add(actions, BorderLayout.NORTH);
+            add(lowStock, BorderLayout.SOUTH);
+            reorder.addActionListener(e -> onReorder());
+            StockVelocity.tracker().lowStock.add(st -> SwingUtilities.invokeLater(() ->
+                    lowStock.setText("Low stock: "+st.sku+" ("+st.name+") has "+st.onHand+" left, about "
+                            +String.format("%.1f", st.cover(StockVelocity.epoch(LocalDateTime.now())))+" days of cover")));
+
+            add.addActionListener(e -> saving(this, this::onAdd));
+            edit.addActionListener(e -> saving(this, this::onEdit));
+            del.addActionListener(e -> saving(this, this::onDelete));
+            sell.addActionListener(e -> saving(this, this::onSell));
+            imp.addActionListener(e -> saving(this, this::onImport));
+
+            model.load(InventoryRepo.all());
+            InventoryRepo.changes.subscribe(model::apply);
+        }
+
+        Optional<InventoryItem> selected(){
+            return Optional.ofNullable(model.rowAt(table.getSelectedRow()));
+        }
+
+        void onAdd(){
+            String sku = JOptionPane.showInputDialog(this,"SKU:"); if (sku==null||sku.isBlank()) return;
+            if (InventoryRepo.bySku(sku).isPresent()){ JOptionPane.showMessageDialog(this,"SKU exists."); return; }
+            String name = JOptionPane.showInputDialog(this,"Name:"); if (name==null) return;
+            String cat = JOptionPane.showInputDialog(this,"Category:"); if (cat==null) return;
+            double price = d(JOptionPane.showInputDialog(this,"Unit Price:"));
+            int qty = i(JOptionPane.showInputDialog(this,"Qty On Hand:"));
+            int tax = JOptionPane.showConfirmDialog(this,"Taxable?","Tax",JOptionPane.YES_NO_OPTION);
+            boolean taxable = (tax==JOptionPane.YES_OPTION);
+            InventoryRepo.insert(new InventoryItem(null, sku, name, cat, price, qty, taxable));
+        }
+
+        void onEdit(){
+            Optional<InventoryItem> opt = selected(); if (opt.isEmpty()){ JOptionPane.showMessageDialog(this,"Select a row"); return; }
+            InventoryItem it = opt.get();
+            String name = JOptionPane.showInputDialog(this,"Name:", it.name); if (name==null) return;
+            String cat = JOptionPane.showInputDialog(this,"Category:", it.category); if (cat==null) return;
+            double price = d(JOptionPane.showInputDialog(this,"Unit Price:", Double.toString(it.unitPrice)));
+            int qty = i(JOptionPane.showInputDialog(this,"Qty On Hand:", Integer.toString(it.qtyOnHand)));
+            boolean taxable = JOptionPane.showConfirmDialog(this,"Taxable?","Tax", it.taxable?JOptionPane.YES_OPTION:JOptionPane.NO_OPTION)==JOptionPane.YES_OPTION;
+            InventoryRepo.update(it.id, x -> { x.name=name; x.category=cat; x.unitPrice=price; x.qtyOnHand=qty; x.taxable=taxable; });
+        }
+
+        void onDelete(){
+            Optional<InventoryItem> opt = selected(); if (opt.isEmpty()){ JOptionPane.showMessageDialog(this,"Select a row"); return; }
+            if (JOptionPane.showConfirmDialog(this,"Delete selected item?","Confirm",JOptionPane.OK_CANCEL_OPTION)!=JOptionPane.OK_OPTION) return;
+            InventoryRepo.delete(opt.get().id);
+        }
+
+        // rings up SKUs until the clerk leaves the SKU box blank, then takes one payment
+        void onSell(){
+            Cart cart = new Cart();
+            String cust = null;
+            while (cust==null){   // cancelling the customer prompt goes back to the basket
+                String prompt = cart.isEmpty()? "Enter SKU to sell:" : StoreOps.label(cart.sale)+"\nSubtotal: "+money(cart.total())+"\n\nNext SKU (blank to finish):";
+                String sku = JOptionPane.showInputDialog(this, prompt); if (sku==null) return;
+                if (sku.isBlank()){
+                    if (cart.isEmpty()) return;
+                    cust = askCustomer(this);
+                    continue;
+                }
+                Optional<InventoryItem> opt = InventoryRepo.bySku(sku.trim());
+                if (opt.isEmpty()){ JOptionPane.showMessageDialog(this,"Not found"); continue; }
+                InventoryItem it = opt.get();
+                int qty = i(JOptionPane.showInputDialog(this,"Qty:"));
+                if (qty<=0 || cart.qtyOf(it.id)+qty>it.qtyOnHand){ JOptionPane.showMessageDialog(this,"Invalid qty"); continue; }
+                cart.addItem(it, qty);
+            }
+            cart.customer(cust);
+
+            int method = JOptionPane.showOptionDialog(this,
+                    "Total: "+money(cart.total())+"\nChoose payment method",
+                    "Payment", JOptionPane.DEFAULT_OPTION, JOptionPane.QUESTION_MESSAGE, null,
+                    new Object[]{"Cash","Card"}, "Cash");
+            Sale sale;
+            try { sale = StoreOps.checkout(cart, method==0); }
+            catch (IllegalStateException e){ JOptionPane.showMessageDialog(this, e.getMessage()); return; }
 
             JOptionPane.showMessageDialog(this,"Sale complete.\nReceipt: "+sale.id);
-            reload();
+        }
+
+        void onReorder(){
+            long now = StockVelocity.epoch(LocalDateTime.now());
+            StringBuilder sb = new StringBuilder(String.format("%-16s %-24s %7s %9s %8s %8s%n", "SKU", "Name", "OnHand", "Units/day", "Cover", "Order"));
+            for (StockVelocity.Stat st : StockVelocity.tracker().reorderList()){
+                double cover = st.cover(now);
+                sb.append(String.format("%-16s %-24s %7d %9.2f %8s %8d%n", st.sku, st.name, st.onHand, st.rateAt(now),
+                        Double.isInfinite(cover)? "-" : String.format("%.1fd", cover), StockVelocity.suggestedQty(st, now)));
+            }
+            JTextArea area = new JTextArea(sb.toString(), 20, 80);
+            area.setFont(new java.awt.Font(java.awt.Font.MONOSPACED, java.awt.Font.PLAIN, 12));
+            area.setEditable(false);
+            JOptionPane.showMessageDialog(this, new JScrollPane(area), "Reorder suggestions", JOptionPane.PLAIN_MESSAGE);
+        }
+
+        void onImport(){
+            JFileChooser fc = new JFileChooser();
+            if (fc.showOpenDialog(this)!=JFileChooser.APPROVE_OPTION) return;
+            try {
+                BulkImport.Result res = BulkImport.run(fc.getSelectedFile().toPath());
+                String msg = String.format("Imported %d rows (%d new, %d updated) in %.2fs (%.0f rows/s).",
+                        res.rows, res.inserted, res.updated, res.seconds(), res.rowsPerSecond());
+                if (!res.errors.isEmpty()) msg += "\n"+res.errors.size()+" rows rejected, see "+BulkImport.writeErrors(res);
+                JOptionPane.showMessageDialog(this, msg);
+            } catch (IOException e) {
+                JOptionPane.showMessageDialog(this,"Could not read file: "+e.getMessage());
+            }
         }
     }
 
     // ---- Services (Catalog + Appointments) ----
     class ServicesPanel extends JPanel {
-        DefaultTableModel model = new DefaultTableModel(new Object[]{"When","Customer","Service","Status","Paid"},0){
-            public boolean isCellEditable(int r,int c){return false;}
-        };
+        Map<String,String> customerNames = new HashMap<>(), serviceNames = new HashMap<>();
+        RowTableModel<Appointment> model = new RowTableModel<>(new String[]{"When","Customer","Service","Status","Paid"},
+                a -> a.id, a -> new Object[]{a.start, customerName(a.customerId), serviceName(a.serviceId), a.status, money(a.paidAmount)});
         JTable table = new JTable(model);
 
         ServicesPanel(){
@@ -579,23 +2538,26 @@ public class FarmStoreManager extends JFrame {
             actions.add(newAppt); actions.add(donePay); actions.add(addSvc);
             add(actions, BorderLayout.NORTH);
 
-            newAppt.addActionListener(e -> onNewAppt());
-            donePay.addActionListener(e -> onDonePay());
-            addSvc.addActionListener(e -> onAddService());
+            newAppt.addActionListener(e -> saving(this, this::onNewAppt));
+            donePay.addActionListener(e -> saving(this, this::onDonePay));
+            addSvc.addActionListener(e -> saving(this, this::onAddService));
 
-            reload();
+            for (Customer c : CustomerRepo.all()) customerNames.put(c.id, c.fullName);
+            for (Service s : ServiceRepo.all()) serviceNames.put(s.id, s.name);
+            model.load(AppointmentRepo.all());
+            AppointmentRepo.changes.subscribe(model::apply);
         }
 
-        void reload(){
-            model.setRowCount(0);
-            List<Appointment> appts = AppointmentRepo.all();
-            List<Customer> customers = CustomerRepo.all();
-            List<Service> svcs = ServiceRepo.all();
-            for (Appointment a : appts){
-                String cname = customers.stream().filter(c->c.id.equals(a.customerId)).map(c->c.fullName).findFirst().orElse("?");
-                String sname = svcs.stream().filter(s->s.id.equals(a.serviceId)).map(s->s.name).findFirst().orElse("?");
-                model.addRow(new Object[]{a.start, cname, sname, a.status, money(a.paidAmount)});
-            }
+        // name lookups are cached; a miss (customer/service added since load) reads the CSV once
+        String customerName(String id){
+            String nm = customerNames.get(id);
+            if (nm==null){ nm = CustomerRepo.byId(id).map(c->c.fullName).orElse(null); if (nm!=null) customerNames.put(id, nm); }
+            return nm==null? "?" : nm;
+        }
+        String serviceName(String id){
+            String nm = serviceNames.get(id);
+            if (nm==null){ nm = ServiceRepo.byId(id).map(s->s.name).orElse(null); if (nm!=null) serviceNames.put(id, nm); }
+            return nm==null? "?" : nm;
         }
 
         void onAddService(){
@@ -610,11 +2572,8 @@ public class FarmStoreManager extends JFrame {
             String desc = JOptionPane.showInputDialog(this,"Enter a short description of the service:"); if (desc==null) desc="";
             double price = d(JOptionPane.showInputDialog(this,"Base price:"));
             int mins = i(JOptionPane.showInputDialog(this,"Duration (minutes):"));
-            List<Service> all = ServiceRepo.all();
-            all.add(new Service(id, name, desc, price, mins));
-            ServiceRepo.saveAll(all);
+            if (!ServiceRepo.insert(new Service(id, name, desc, price, mins))){ JOptionPane.showMessageDialog(null, "This service number is already in use"); return; }
             JOptionPane.showMessageDialog(this,"Service added.");
-            reload();
         }
 
         void onNewAppt(){
@@ -629,13 +2588,11 @@ public class FarmStoreManager extends JFrame {
             }
 
             String custId = JOptionPane.showInputDialog(this,customerOutput); if (custId==null) return;
-            List<Customer> custs = CustomerRepo.all();
-            if (custs.stream().noneMatch(c->c.id.equals(custId))){
+            if (CustomerRepo.byId(custId).isEmpty()){
                 String nm = JOptionPane.showInputDialog(this,"Customer name:"); if (nm==null) return;
                 String ph = JOptionPane.showInputDialog(this,"Phone:"); if (ph==null) ph="";
                 String em = JOptionPane.showInputDialog(this,"Email:"); if (em==null) em="";
-                custs.add(new Customer(custId, nm, ph, em));
-                CustomerRepo.saveAll(custs);
+                CustomerRepo.insert(new Customer(custId, nm, ph, em));
             }
 
             StringBuilder serviceOutput = new StringBuilder();
@@ -661,53 +2618,35 @@ public class FarmStoreManager extends JFrame {
             
             try{
                 LocalDateTime when = LocalDateTime.parse(AppWhen, format);
-
-                Appointment ap = new Appointment(null, custId, null, svcId, when, when.plusMinutes(svc.get().durationMinutes), "BOOKED", 0);
-
-                // simple overlap check
-                 for (Appointment a : AppointmentRepo.all()){
-                    boolean overlap = a.start.isBefore(ap.end) && ap.start.isBefore(a.end);
-                    if (overlap){ JOptionPane.showMessageDialog(this,"Time overlaps existing appointment."); return; }
-                }
-
-                List<Appointment> all = AppointmentRepo.all(); all.add(ap); AppointmentRepo.saveAll(all);
+                if (StoreOps.book(custId, svc.get(), when)==null){ JOptionPane.showMessageDialog(this,"Time overlaps existing appointment."); return; }
             }
             catch (DateTimeParseException e) {
                 JOptionPane.showMessageDialog(null, "Improper Date Format\nCanceling Appointment Scheduling");
             }
-
-            reload();
         }
 
         void onDonePay(){
-            int r = table.getSelectedRow(); if (r<0){ JOptionPane.showMessageDialog(this,"Select an appointment"); return; }
-            List<Appointment> all = AppointmentRepo.all();
-            Appointment ap = all.get(r);
+            Appointment ap = model.rowAt(table.getSelectedRow()); if (ap==null){ JOptionPane.showMessageDialog(this,"Select an appointment"); return; }
             Service svc = ServiceRepo.byId(ap.serviceId).orElse(null);
             if (svc==null){ JOptionPane.showMessageDialog(this,"Service missing"); return; }
             double pay = d(JOptionPane.showInputDialog(this,"Collect payment (base "+money(svc.basePrice)+"):", Double.toString(svc.basePrice)));
-            ap.status="DONE"; ap.paidAmount=pay;
-
-            Sale sale = new Sale();
-
-            dailyDates.add(LocalDateTime.now().format(format));
-            dailyReceipts.add(sale.id);
-            dailyItems.add(svc.name + " Service");
-            dailyPrices.add(money(pay));
-
-            AppointmentRepo.saveAll(all);
+            try { StoreOps.payAppointment(ap, svc, pay); }
+            catch (IllegalStateException e){ JOptionPane.showMessageDialog(this, e.getMessage()); return; }
             JOptionPane.showMessageDialog(this,"Marked DONE. Paid "+money(pay));
-            reload();
         }
     }
 
     // ---- Animals (Inventory & Sales) ----
     class AnimalsPanel extends JPanel {
-        DefaultTableModel model = new DefaultTableModel(new Object[]{"ID","Species","Breed","Sex","Age(m)","Price","On Hold","Supplier","Sold"},0){
-            public boolean isCellEditable(int r,int c){return false;}
-        };
+        RowTableModel<Animal> model = new RowTableModel<>(new String[]{"ID","Species","Breed","Sex","Age(m)","Price","On Hold","Supplier","Sold"},
+                a -> a.id, a -> new Object[]{a.id,a.species,a.breed,a.sex,a.ageMonths,money(a.price),a.onHold,a.supplierName,a.sold});
         JTable table = new JTable(model);
 
+        final String ANY = "Any";
+        JComboBox<String> speciesBox = filterBox("species"), breedBox = filterBox("breed"), sexBox = filterBox("sex");
+        JCheckBox hideSold = new JCheckBox("Hide sold", true), hideHold = new JCheckBox("Hide on hold");
+        AnimalIndex.Filter filter = new AnimalIndex.Filter();
+
         AnimalsPanel(){
             setLayout(new BorderLayout());
             add(new JScrollPane(table), BorderLayout.CENTER);
@@ -717,26 +2656,61 @@ public class FarmStoreManager extends JFrame {
             JButton edit = new JButton("Edit");
             JButton sell = new JButton("Sell");
             actions.add(add); actions.add(edit); actions.add(sell);
+            actions.add(new JLabel("  Species:")); actions.add(speciesBox);
+            actions.add(new JLabel("Breed:")); actions.add(breedBox);
+            actions.add(new JLabel("Sex:")); actions.add(sexBox);
+            actions.add(hideSold); actions.add(hideHold);
             add(actions, BorderLayout.NORTH);
 
-            add.addActionListener(e -> onAdd());
-            edit.addActionListener(e -> onEdit());
-            sell.addActionListener(e -> onSell());
+            add.addActionListener(e -> saving(this, this::onAdd));
+            edit.addActionListener(e -> saving(this, this::onEdit));
+            sell.addActionListener(e -> saving(this, this::onSell));
+            for (JComboBox<String> box : List.of(speciesBox, breedBox, sexBox)) box.addActionListener(e -> refilter());
+            hideSold.addActionListener(e -> refilter());
+            hideHold.addActionListener(e -> refilter());
+
+            AnimalRepo.index();
+            refilter();
+            // keep only rows that still match the filter; the index itself is updated by AnimalRepo
+            AnimalRepo.changes.subscribe(c -> SwingUtilities.invokeLater(() -> {
+                if (c.kind!=ChangeKind.DELETE && filter.test(c.row)) model.apply(c);
+                else model.apply(new Change<>(ChangeKind.DELETE, c.id, null));
+            }));
+        }
 
-            reload();
+        // drop-down values come from the index and are refreshed each time the list opens
+        JComboBox<String> filterBox(String attr){
+            JComboBox<String> box = new JComboBox<>(new String[]{ANY});
+            box.addPopupMenuListener(new javax.swing.event.PopupMenuListener(){
+                public void popupMenuWillBecomeVisible(javax.swing.event.PopupMenuEvent e){
+                    Object sel = box.getSelectedItem();
+                    DefaultComboBoxModel<String> m = new DefaultComboBoxModel<>();
+                    m.addElement(ANY);
+                    for (String v : AnimalRepo.index().values(attr)) m.addElement(v);
+                    if (sel!=null && m.getIndexOf(sel)<0) m.addElement((String) sel);
+                    m.setSelectedItem(sel);
+                    box.setModel(m);
+                }
+                public void popupMenuWillBecomeInvisible(javax.swing.event.PopupMenuEvent e){}
+                public void popupMenuCanceled(javax.swing.event.PopupMenuEvent e){}
+            });
+            return box;
         }
 
-        void reload(){
-            model.setRowCount(0);
-            for (Animal a : AnimalRepo.all()){
-                model.addRow(new Object[]{a.id,a.species,a.breed,a.sex,a.ageMonths,money(a.price),a.onHold,a.supplierName,a.sold});
-            }
+        void refilter(){
+            filter.species = choice(speciesBox); filter.breed = choice(breedBox); filter.sex = choice(sexBox);
+            filter.sold = hideSold.isSelected()? Boolean.FALSE : null;
+            filter.onHold = hideHold.isSelected()? Boolean.FALSE : null;
+            model.load(AnimalRepo.index().query(filter));
+        }
+
+        String choice(JComboBox<String> box){
+            Object v = box.getSelectedItem();
+            return (v==null || ANY.equals(v))? null : (String) v;
         }
 
         Optional<Animal> selected(){
-            int r = table.getSelectedRow(); if (r<0) return Optional.empty();
-            String id = (String) model.getValueAt(r,0);
-            return AnimalRepo.all().stream().filter(a->a.id.equals(id)).findFirst();
+            return Optional.ofNullable(model.rowAt(table.getSelectedRow()));
         }
 
         void onAdd(){
@@ -746,10 +2720,7 @@ public class FarmStoreManager extends JFrame {
             int age = i(JOptionPane.showInputDialog(this,"Age (months):"));
             double price = d(JOptionPane.showInputDialog(this,"Price:"));
             String supplier = JOptionPane.showInputDialog(this,"Supplier:"); if (supplier==null) supplier="";
-            List<Animal> all = AnimalRepo.all();
-            all.add(new Animal(null, species, breed, sex, age, "", price, false, supplier, "", false));
-            AnimalRepo.saveAll(all);
-            reload();
+            AnimalRepo.insert(new Animal(null, species, breed, sex, age, "", price, false, supplier, "", false));
         }
 
         void onEdit(){
@@ -758,10 +2729,7 @@ public class FarmStoreManager extends JFrame {
             String breed = JOptionPane.showInputDialog(this,"Breed:", a.breed); if (breed==null) return;
             double price = d(JOptionPane.showInputDialog(this,"Price:", Double.toString(a.price)));
             boolean hold = JOptionPane.showConfirmDialog(this,"On Hold?","Hold", a.onHold?JOptionPane.YES_OPTION:JOptionPane.NO_OPTION)==JOptionPane.YES_OPTION;
-            List<Animal> all = AnimalRepo.all();
-            for (Animal x : all) if (x.id.equals(a.id)){ x.breed=breed; x.price=price; x.onHold=hold; }
-            AnimalRepo.saveAll(all);
-            reload();
+            AnimalRepo.update(a.id, x -> { x.breed=breed; x.price=price; x.onHold=hold; });
         }
 
         void onSell(){
@@ -769,26 +2737,13 @@ public class FarmStoreManager extends JFrame {
             Animal a = opt.get();
             if (a.onHold){ JOptionPane.showMessageDialog(this,"Animal is on hold."); return; }
             if (a.sold){ JOptionPane.showMessageDialog(this,"Already sold."); return; }
+            String cust = askCustomer(this); if (cust==null) return;
 
-            Sale sale = new Sale();
-            sale.lines.add(SaleLine.animal(a));
-            computeTotals(sale);
-            sale.paidCard = sale.total; // simple
-
-            // commit: mark animal sold, save animal + sale
-            List<Animal> animals = AnimalRepo.all();
-            for (Animal x : animals) if (x.id.equals(a.id)) x.sold = true;
-            AnimalRepo.saveAll(animals);
-
-            List<Sale> sales = SaleRepo.all(); sales.add(sale); SaleRepo.saveAll(sales);
-
-            dailyDates.add(LocalDateTime.now().format(format));
-            dailyReceipts.add(sale.id);
-            dailyItems.add(a.breed + " " + a.species);
-            dailyPrices.add(money(sale.total));
+            Sale sale;
+            try { sale = StoreOps.sellAnimal(a, n(cust)); }
+            catch (IllegalStateException e){ JOptionPane.showMessageDialog(this, e.getMessage()); return; }
 
             JOptionPane.showMessageDialog(this,"Sold. Receipt: "+sale.id+"  Total: "+money(sale.total));
-            reload();
         }
     }
 
@@ -832,8 +2787,16 @@ public class FarmStoreManager extends JFrame {
             buttonPanel.add(refresh);
 
             JButton endDayButton = new JButton("End Day");
-            endDayButton.addActionListener(e -> saveRestock());
+            endDayButton.addActionListener(e -> saving(this, this::saveRestock));
             buttonPanel.add(endDayButton);
+
+            JButton history = new JButton("Customer History");
+            history.addActionListener(e -> onCustomerHistory());
+            buttonPanel.add(history);
+
+            JButton skuSales = new JButton("SKU Sales");
+            skuSales.addActionListener(e -> onSkuSales());
+            buttonPanel.add(skuSales);
             
             // Add the button panel to NORTH
             add(buttonPanel, BorderLayout.NORTH);
@@ -842,6 +2805,10 @@ public class FarmStoreManager extends JFrame {
         }
         
         void reload(){
+            DB_LOCK.lock(); try { fill(); } finally { DB_LOCK.unlock(); }
+        }
+
+        private void fill(){
             model.setRowCount(0);
            if (lifetimeDates.isEmpty()){
                 for (int i = 0; i < dailyDates.size(); i++) {
@@ -871,21 +2838,43 @@ public class FarmStoreManager extends JFrame {
 
         }
 
-        void saveRestock(){
-            for (int i = 0; i < dailyDates.size(); i++) {
-                lifetimeDates.add(dailyDates.get(i));
-                lifetimeReceipts.add(dailyReceipts.get(i));
-                lifetimeItems.add(dailyItems.get(i));
-                lifetimePrices.add(dailyPrices.get(i));
+        void onCustomerHistory(){
+            String id = askCustomer(this); if (id==null || id.isEmpty()) return;
+            StringBuilder sb = new StringBuilder();
+            for (Sale s : SaleRepo.index().forCustomer(id)){
+                sb.append(s.dateTime.format(format)).append("  ").append(s.id).append("  ").append(money(s.total)).append('\n');
+                for (SaleLine l : s.lines) sb.append("      ").append(l.qty).append(" x ").append(l.description).append('\n');
             }
+            sb.append("\nLifetime spend: ").append(money(SaleRepo.index().lifetimeSpend(id)));
+            showText("Purchase history for "+id, sb.toString());
+        }
 
-            // Save lifetime data to CSV
-            LifetimeTransactionRepo.saveFromLists();
+        void onSkuSales(){
+            String sku = JOptionPane.showInputDialog(this,"SKU:"); if (sku==null) return;
+            Optional<InventoryItem> it = InventoryRepo.bySku(sku.trim());
+            if (it.isEmpty()){ JOptionPane.showMessageDialog(this,"Not found"); return; }
+            int days = i(JOptionPane.showInputDialog(this,"Days back:", "30")); if (days<=0) return;
+            java.time.LocalDate to = java.time.LocalDate.now();
+            StringBuilder sb = new StringBuilder();
+            int units = 0; double revenue = 0;
+            for (Sale s : SaleRepo.index().forRef(it.get().id, to.minusDays(days), to)){
+                for (SaleLine l : s.lines) if (l.refId.equals(it.get().id)){
+                    units += l.qty; revenue += l.lineTotal;
+                    sb.append(s.dateTime.format(format)).append("  ").append(s.id).append("  ").append(l.qty).append(" @ ").append(money(l.unitPrice)).append('\n');
+                }
+            }
+            sb.append("\n").append(units).append(" sold, ").append(money(revenue)).append(" before tax");
+            showText(it.get().sku+" sales, last "+days+" days", sb.toString());
+        }
 
-            dailyDates.clear();
-            dailyReceipts.clear();
-            dailyItems.clear();
-            dailyPrices.clear();
+        void showText(String title, String text){
+            JTextArea area = new JTextArea(text, 20, 60);
+            area.setEditable(false);
+            JOptionPane.showMessageDialog(this, new JScrollPane(area), title, JOptionPane.PLAIN_MESSAGE);
+        }
+
+        void saveRestock(){
+            StoreOps.closeDay();
 
             JOptionPane.showMessageDialog(null, "Program is shutting down for the night.", "Shutting Down", JOptionPane.INFORMATION_MESSAGE);
             System.exit(0);